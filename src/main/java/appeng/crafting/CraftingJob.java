@@ -37,6 +37,7 @@ import appeng.api.storage.data.IItemList;
 import appeng.api.util.DimensionalCoord;
 import appeng.core.AELog;
 import appeng.hooks.TickHandler;
+import appeng.util.item.HashItemList;
 import com.gamerforea.ae.EventConfig;
 import com.google.common.base.Stopwatch;
 import net.minecraft.entity.player.EntityPlayer;
@@ -44,9 +45,15 @@ import net.minecraft.item.Item;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.world.World;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CraftingJob implements Runnable, ICraftingJob
 {
@@ -55,8 +62,12 @@ public class CraftingJob implements Runnable, ICraftingJob
 
 	private final MECraftingInventory original;
 	private final World world;
+	/* TODO gamerforEA code replace, old code:
 	private final IItemList<IAEItemStack> crafting = AEApi.instance().storage().createItemList();
-	private final IItemList<IAEItemStack> missing = AEApi.instance().storage().createItemList();
+	private final IItemList<IAEItemStack> missing = AEApi.instance().storage().createItemList(); */
+	private final IItemList<IAEItemStack> crafting = HashItemList.createItemList(EventConfig.hashItemListCrafting);
+	private final IItemList<IAEItemStack> missing = HashItemList.createItemList(EventConfig.hashItemListCrafting);
+	// TODO gamerforEA code end
 	private final HashMap<String, TwoIntegers> opsAndMultiplier = new HashMap<>();
 	private final Object monitor = new Object();
 	private final Stopwatch watch = Stopwatch.createUnstarted();
@@ -67,10 +78,61 @@ public class CraftingJob implements Runnable, ICraftingJob
 	private long bytes = 0;
 	private final BaseActionSource actionSrc;
 	private final ICraftingCallback callback;
+	/* TODO gamerforEA code replace, old code:
 	private boolean running = false;
 	private boolean done = false;
 	private int time = 5;
-	private int incTime = Integer.MAX_VALUE;
+	private int incTime = Integer.MAX_VALUE; */
+	private volatile boolean running = false;
+	private volatile boolean done = false;
+	private volatile int time = 5;
+	private final AtomicInteger incTime = new AtomicInteger(Integer.MAX_VALUE);
+	// TODO gamerforEA code end
+
+	// TODO gamerforEA code start
+	private static ForkJoinPool pool;
+
+	/**
+	 * Paused workers of the shared pool replaced by spare threads
+	 */
+	private static final AtomicInteger compensatedWorkers = new AtomicInteger();
+
+	/**
+	 * Threads calculating the job (the job thread and the workers of the parallel branches), guarded by the monitor.
+	 * {@link #simulateFor} returns only after all of them are paused, so the calculation never overlaps the world tick.
+	 */
+	private int calculatingThreads = 1;
+
+	/**
+	 * The job is finishing, the branches still calculated are stopped
+	 */
+	private volatile boolean aborted;
+
+	/**
+	 * Waits until the job is resumed by {@link #simulateFor} or aborted
+	 */
+	private final ForkJoinPool.ManagedBlocker pauseBlocker = new ForkJoinPool.ManagedBlocker()
+	{
+		@Override
+		public boolean block() throws InterruptedException
+		{
+			synchronized (CraftingJob.this.monitor)
+			{
+				while (!this.isReleasable())
+				{
+					CraftingJob.this.monitor.wait();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable()
+		{
+			return CraftingJob.this.running || CraftingJob.this.aborted;
+		}
+	};
+	// TODO gamerforEA code end
 
 	private World wrapWorld(final World w)
 	{
@@ -97,16 +159,140 @@ public class CraftingJob implements Runnable, ICraftingJob
 		return new CraftingTreeNode(cc, this, what, null, -1, 0);
 	}
 
-	void refund(final IAEItemStack o)
+	/* TODO gamerforEA code replace, old code:
+	void refund(final IAEItemStack o) */
+	synchronized void refund(final IAEItemStack o)
+	// TODO gamerforEA code end
 	{
 		this.availableCheck.injectItems(o, Actionable.MODULATE, this.actionSrc);
 	}
 
-	IAEItemStack checkUse(final IAEItemStack available)
+	/* TODO gamerforEA code replace, old code:
+	IAEItemStack checkUse(final IAEItemStack available) */
+	synchronized IAEItemStack checkUse(final IAEItemStack available)
+	// TODO gamerforEA code end
 	{
 		return this.availableCheck.extractItems(available, Actionable.MODULATE, this.actionSrc);
 	}
 
+	// TODO gamerforEA code start
+
+	/**
+	 * Runs the tasks on the thread pool shared by all jobs (parallel calculation of the crafting tree branches)
+	 */
+	void invokeAll(final Collection<? extends ForkJoinTask<?>> tasks) throws InterruptedException
+	{
+		final ForkJoinPool pool = getPool();
+		final Thread thread = Thread.currentThread();
+
+		// The tasks register their threads themselves, this one only waits for them
+		this.endCalculation();
+		try
+		{
+			if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool)
+				ForkJoinTask.invokeAll(tasks);
+			else
+				pool.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+		}
+		catch (final ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+		finally
+		{
+			this.beginCalculation();
+		}
+	}
+
+	/**
+	 * Registers the current thread as calculating the job, waits while the job is paused.
+	 * The thread is registered even if an exception is thrown, so every call is paired with {@link #endCalculation}.
+	 *
+	 * @throws InterruptedException if the job is aborted or the thread is interrupted
+	 */
+	void beginCalculation() throws InterruptedException
+	{
+		InterruptedException interrupted = null;
+		while (true)
+		{
+			synchronized (this.monitor)
+			{
+				if (this.running || this.aborted || interrupted != null)
+				{
+					this.calculatingThreads++;
+					break;
+				}
+			}
+
+			try
+			{
+				this.waitForResume();
+			}
+			catch (final InterruptedException e)
+			{
+				interrupted = e;
+			}
+		}
+
+		if (interrupted != null)
+			throw interrupted;
+		if (this.aborted)
+			throw new InterruptedException();
+	}
+
+	void endCalculation()
+	{
+		synchronized (this.monitor)
+		{
+			if (--this.calculatingThreads == 0)
+				this.monitor.notifyAll();
+		}
+	}
+
+	private void waitForResume() throws InterruptedException
+	{
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			// Lets the pool replace the paused worker, but with no more spare threads than the pool has workers
+			if (compensatedWorkers.incrementAndGet() <= getPool().getParallelism())
+				try
+				{
+					ForkJoinPool.managedBlock(this.pauseBlocker);
+					return;
+				}
+				finally
+				{
+					compensatedWorkers.decrementAndGet();
+				}
+			compensatedWorkers.decrementAndGet();
+		}
+
+		this.pauseBlocker.block();
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+			pool = new ForkJoinPool(Math.max(EventConfig.parallelCraftingThreads, 1), WorkerThread::new, null, false);
+		return pool;
+	}
+
+	private static final class WorkerThread extends ForkJoinWorkerThread
+	{
+		private WorkerThread(final ForkJoinPool pool)
+		{
+			super(pool);
+			this.setName("AE2 Crafting Worker #" + this.getPoolIndex());
+			this.setDaemon(true);
+		}
+	}
+	// TODO gamerforEA code end
+
 	public void writeToNBT(final NBTTagCompound out)
 	{
 
@@ -230,19 +416,35 @@ public class CraftingJob implements Runnable, ICraftingJob
 
 	void handlePausing() throws InterruptedException
 	{
+		/* TODO gamerforEA code replace, old code:
 		if (this.incTime > 100)
 		{
-			this.incTime = 0;
+			this.incTime = 0; */
+		// The worker threads of the parallel calculation don't run on while the job is paused or aborted
+		if (this.incTime.get() > 100 || !this.running || this.aborted)
+		{
+			this.incTime.set(0);
+			// TODO gamerforEA code end
 
 			synchronized (this.monitor)
 			{
+				/* TODO gamerforEA code replace, old code:
 				if (this.watch.elapsed(TimeUnit.MICROSECONDS) > this.time)
 				{
 					this.running = false;
 					this.watch.stop();
 					this.monitor.notify();
+				} */
+				// The worker threads of the parallel calculation pause here as well
+				if (this.running && this.watch.elapsed(TimeUnit.MICROSECONDS) > this.time)
+				{
+					this.running = false;
+					this.watch.stop();
+					this.monitor.notifyAll();
 				}
+				// TODO gamerforEA code end
 
+				/* TODO gamerforEA code replace, old code:
 				if (!this.running)
 				{
 					AELog.craftingDebug("crafting job will now sleep");
@@ -253,17 +455,61 @@ public class CraftingJob implements Runnable, ICraftingJob
 					}
 
 					AELog.craftingDebug("crafting job now active");
-				}
+				} */
+				if (!this.running)
+					AELog.craftingDebug("crafting job will now sleep");
+				// TODO gamerforEA code end
+			}
+
+			// TODO gamerforEA code start
+			if (!this.running || this.aborted)
+			{
+				this.endCalculation();
+				this.beginCalculation();
+				AELog.craftingDebug("crafting job now active");
 			}
+			// TODO gamerforEA code end
 
 			if (Thread.interrupted())
 				throw new InterruptedException();
 		}
-		this.incTime++;
+		// TODO gamerforEA code replace, old code:
+		// this.incTime++;
+		this.incTime.incrementAndGet();
+		// TODO gamerforEA code end
 	}
 
 	private void finish()
 	{
+		// TODO gamerforEA code start
+		synchronized (this.monitor)
+		{
+			if (!this.aborted)
+			{
+				// Stops the branches still calculated after a failure or cancellation and waits for them
+				this.aborted = true;
+				this.monitor.notifyAll();
+				this.calculatingThreads--;
+
+				boolean interrupted = false;
+				while (this.calculatingThreads > 0)
+				{
+					try
+					{
+						this.monitor.wait();
+					}
+					catch (final InterruptedException e)
+					{
+						interrupted = true;
+					}
+				}
+
+				if (interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}
+		// TODO gamerforEA code end
+
 		if (this.callback != null)
 			this.callback.calculationComplete(this);
 
@@ -273,7 +519,10 @@ public class CraftingJob implements Runnable, ICraftingJob
 		{
 			this.running = false;
 			this.done = true;
-			this.monitor.notify();
+			// TODO gamerforEA code replace, old code:
+			// this.monitor.notify();
+			this.monitor.notifyAll();
+			// TODO gamerforEA code end
 		}
 	}
 
@@ -333,9 +582,16 @@ public class CraftingJob implements Runnable, ICraftingJob
 
 			AELog.craftingDebug("main thread is now going to sleep");
 
-			this.monitor.notify();
+			// TODO gamerforEA code replace, old code:
+			// this.monitor.notify();
+			this.monitor.notifyAll();
+			// TODO gamerforEA code end
 
-			while (this.running)
+			/* TODO gamerforEA code replace, old code:
+			while (this.running) */
+			// Waits until all threads of the job are paused
+			while (this.running || this.calculatingThreads > 0)
+			// TODO gamerforEA code end
 			{
 				try
 				{
@@ -23,6 +23,8 @@ import appeng.api.config.Actionable;
 import appeng.api.networking.crafting.ICraftingGrid;
 import appeng.api.networking.crafting.ICraftingPatternDetails;
 import appeng.api.networking.security.BaseActionSource;
+import appeng.api.storage.IMEInventory;
+import appeng.api.storage.StorageChannel;
 import appeng.api.storage.data.IAEItemStack;
 import appeng.api.storage.data.IItemList;
 import appeng.container.ContainerNull;
@@ -33,13 +35,15 @@ import cpw.mods.fml.common.FMLCommonHandler;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.inventory.InventoryCrafting;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraftforge.oredict.OreDictionary;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.RecursiveAction;
 
 public class CraftingTreeProcess
 {
@@ -47,7 +51,10 @@ public class CraftingTreeProcess
 	private final CraftingTreeNode parent;
 	final ICraftingPatternDetails details;
 	private final CraftingJob job;
-	private final Map<CraftingTreeNode, Long> nodes = new HashMap<>();
+	/* TODO gamerforEA code replace, old code:
+	private final Map<CraftingTreeNode, Long> nodes = new HashMap<>(); */
+	private final Map<CraftingTreeNode, Long> nodes = new LinkedHashMap<>();
+	// TODO gamerforEA code end
 	private final int depth;
 	boolean possible = true;
 	private World world;
@@ -57,6 +64,26 @@ public class CraftingTreeProcess
 	private boolean fullSimulation;
 	private long bytes = 0;
 
+	// TODO gamerforEA code start
+	private static final ThreadLocal<CraftingTreeProcess> CONSTRUCTING = new ThreadLocal<>();
+
+	/**
+	 * Items each input branch can extract or inject, only while the tree is constructed
+	 */
+	private Map<CraftingTreeNode, Set<Item>> inputItems;
+	private Set<CraftingTreeNode> craftedInputs;
+
+	/**
+	 * Inputs whose branches fire crafting events (full simulation), calculated on the job thread only
+	 */
+	private Set<CraftingTreeNode> serialInputs;
+
+	/**
+	 * Crafted inputs whose branches share no items with the other inputs (calculated in parallel), by input order
+	 */
+	private Map<CraftingTreeNode, Set<Item>> parallelInputs;
+	// TODO gamerforEA code end
+
 	// TODO gamerforEA code start
 	private static void firePlayerCraftingEvent(EntityPlayer player, ItemStack crafted, IInventory craftMatrix)
 	{
@@ -73,6 +100,15 @@ public class CraftingTreeProcess
 		this.depth = depth;
 		final World world = job.getWorld();
 
+		// TODO gamerforEA code start
+		if (EventConfig.parallelCraftingThreads > 0)
+		{
+			this.inputItems = new IdentityHashMap<>();
+			this.craftedInputs = Collections.newSetFromMap(new IdentityHashMap<>());
+			this.serialInputs = Collections.newSetFromMap(new IdentityHashMap<>());
+		}
+		// TODO gamerforEA code end
+
 		if (details.isCraftable())
 		{
 			final IAEItemStack[] list = details.getInputs();
@@ -129,7 +165,12 @@ public class CraftingTreeProcess
 				{
 					final IAEItemStack part = list[x];
 					if (part != null)
-						this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, x, depth + 1), part.getStackSize());
+					{
+						// TODO gamerforEA code replace, old code:
+						// this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, x, depth + 1), part.getStackSize());
+						this.nodes.put(this.createNode(cc, job, part.copy(), x, depth + 1), part.getStackSize());
+						// TODO gamerforEA code end
+					}
 				}
 			else
 				for (final IAEItemStack part : details.getCondensedInputs())
@@ -140,7 +181,10 @@ public class CraftingTreeProcess
 						if (part != null && part.equals(comparePart))
 						{
 							// use the first slot...
-							this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, x, depth + 1), part.getStackSize());
+							// TODO gamerforEA code replace, old code:
+							// this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, x, depth + 1), part.getStackSize());
+							this.nodes.put(this.createNode(cc, job, part.copy(), x, depth + 1), part.getStackSize());
+							// TODO gamerforEA code end
 							break;
 						}
 					}
@@ -165,11 +209,132 @@ public class CraftingTreeProcess
 
 			for (final IAEItemStack part : details.getCondensedInputs())
 			{
-				this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, -1, depth + 1), part.getStackSize());
+				// TODO gamerforEA code replace, old code:
+				// this.nodes.put(new CraftingTreeNode(cc, job, part.copy(), this, -1, depth + 1), part.getStackSize());
+				this.nodes.put(this.createNode(cc, job, part.copy(), -1, depth + 1), part.getStackSize());
+				// TODO gamerforEA code end
 			}
 		}
+
+		// TODO gamerforEA code start
+		this.initParallelInputs();
+		// TODO gamerforEA code end
 	}
 
+	// TODO gamerforEA code start
+	private CraftingTreeNode createNode(final ICraftingGrid cc, final CraftingJob job, final IAEItemStack part, final int slot, final int depth)
+	{
+		if (this.inputItems == null)
+			return new CraftingTreeNode(cc, job, part, this, slot, depth);
+
+		// The processes of the branch add their items to this process (see initParallelInputs)
+		final CraftingTreeProcess outer = CONSTRUCTING.get();
+		CONSTRUCTING.set(this);
+		final CraftingTreeNode node;
+		try
+		{
+			node = new CraftingTreeNode(cc, job, part, this, slot, depth);
+		}
+		finally
+		{
+			CONSTRUCTING.set(outer);
+		}
+
+		final Set<Item> items = this.getInputItems(node);
+		final ItemStack is = part.getItemStack();
+		addItem(items, is);
+
+		// Substitutes are searched with FuzzyMode.IGNORE_ALL (any damage value and the ore dictionary equivalents)
+		if (slot >= 0 && this.details.isCraftable() && this.details.canSubstitute())
+			for (final int oreId : OreDictionary.getOreIDs(is))
+			{
+				for (final ItemStack ore : OreDictionary.getOres(OreDictionary.getOreName(oreId)))
+				{
+					addItem(items, ore);
+				}
+			}
+
+		return node;
+	}
+
+	private Set<Item> getInputItems(final CraftingTreeNode node)
+	{
+		return this.inputItems.computeIfAbsent(node, k -> Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	private void initParallelInputs()
+	{
+		if (this.inputItems == null)
+			return;
+
+		for (final CraftingTreeNode node : this.nodes.keySet())
+		{
+			if (this.craftedInputs.contains(node) && !this.serialInputs.contains(node) && this.isIndependentInput(node))
+			{
+				if (this.parallelInputs == null)
+					this.parallelInputs = new LinkedHashMap<>();
+				this.parallelInputs.put(node, this.inputItems.get(node));
+			}
+		}
+
+		// Leaf inputs are only extracted, a single branch isn't worth a task
+		if (this.parallelInputs != null && this.parallelInputs.size() < 2)
+			this.parallelInputs = null;
+
+		final CraftingTreeProcess outer = CONSTRUCTING.get();
+		if (outer != null && outer.inputItems != null)
+		{
+			final Set<Item> items = outer.getInputItems(this.parent);
+			for (final IAEItemStack is : this.details.getCondensedInputs())
+			{
+				addItem(items, is.getItemStack());
+			}
+			for (final IAEItemStack is : this.details.getCondensedOutputs())
+			{
+				addItem(items, is.getItemStack());
+			}
+			for (final Set<Item> inputItems : this.inputItems.values())
+			{
+				items.addAll(inputItems);
+			}
+			outer.craftedInputs.add(this.parent);
+
+			// The crafting events use the fake player of the world and other mods, both are not thread safe
+			if (this.fullSimulation || !this.serialInputs.isEmpty())
+				outer.serialInputs.add(this.parent);
+		}
+
+		this.inputItems = null;
+		this.craftedInputs = null;
+		this.serialInputs = null;
+	}
+
+	private boolean isIndependentInput(final CraftingTreeNode node)
+	{
+		final Set<Item> items = this.inputItems.get(node);
+		for (final Entry<CraftingTreeNode, Set<Item>> entry : this.inputItems.entrySet())
+		{
+			if (entry.getKey() != node && !Collections.disjoint(items, entry.getValue()))
+				return false;
+		}
+		return true;
+	}
+
+	private static void addItem(final Set<Item> items, final ItemStack is)
+	{
+		if (is == null || is.getItem() == null)
+			return;
+
+		items.add(is.getItem());
+
+		final ItemStack single = is.copy();
+		single.stackSize = 1;
+		final ItemStack container = Platform.getContainerItem(single);
+		if (container != null && container.getItem() != null)
+			items.add(container.getItem());
+	}
+	// TODO gamerforEA code end
+
 	boolean notRecursive(final ICraftingPatternDetails details)
 	{
 		return this.parent == null || this.parent.notRecursive(details);
@@ -218,6 +383,10 @@ public class CraftingTreeProcess
 				}
 			}
 		}
+		// TODO gamerforEA code start
+		else if (this.parallelInputs != null && EventConfig.parallelCraftingThreads > 0)
+			this.requestParallel(inv, i, src);
+		// TODO gamerforEA code end
 		else
 			for (final Entry<CraftingTreeNode, Long> entry : this.nodes.entrySet())
 			{
@@ -249,6 +418,144 @@ public class CraftingTreeProcess
 		this.crafts += i;
 	}
 
+	// TODO gamerforEA code start
+
+	/**
+	 * Requests the independent inputs in parallel, each from its own view of the inventory with only the items of its
+	 * branch, then commits the views in input order and requests the remaining inputs like {@link #request}.
+	 * The branches share no items, so the result is the same as of the sequential calculation.
+	 */
+	private void requestParallel(final MECraftingInventory inv, final long i, final BaseActionSource src)
+			throws CraftBranchFailure, InterruptedException
+	{
+		final List<InputRequest> requests = new ArrayList<>(this.parallelInputs.size());
+		for (final Entry<CraftingTreeNode, Set<Item>> entry : this.parallelInputs.entrySet())
+		{
+			final CraftingTreeNode node = entry.getKey();
+			final MECraftingInventory view = new MECraftingInventory(new BranchInventory(inv, entry.getValue()), true, true, false);
+			requests.add(new InputRequest(this.job, node, this.nodes.get(node) * i, view, src));
+		}
+
+		this.job.invokeAll(requests);
+
+		final Iterator<InputRequest> requestIterator = requests.iterator();
+		for (final Entry<CraftingTreeNode, Long> entry : this.nodes.entrySet())
+		{
+			final CraftingTreeNode node = entry.getKey();
+			final IAEItemStack stack;
+			if (this.parallelInputs.containsKey(node))
+			{
+				final InputRequest request = requestIterator.next();
+				if (request.failure instanceof CraftBranchFailure)
+					throw (CraftBranchFailure) request.failure;
+				if (request.failure instanceof InterruptedException)
+					throw (InterruptedException) request.failure;
+				if (!request.inv.commit(src))
+					throw new CraftBranchFailure(node.getStack(request.amount), request.amount);
+				stack = request.result;
+			}
+			else
+			{
+				final IAEItemStack item = node.getStack(entry.getValue());
+				stack = node.request(inv, item.getStackSize() * i, src);
+			}
+
+			if (this.containerItems)
+			{
+				final ItemStack is = Platform.getContainerItem(stack.getItemStack());
+				final IAEItemStack o = AEApi.instance().storage().createItemStack(is);
+				if (o != null)
+				{
+					this.bytes++;
+					inv.injectItems(o, Actionable.MODULATE, src);
+				}
+			}
+		}
+	}
+
+	private static final class InputRequest extends RecursiveAction
+	{
+		private final CraftingJob job;
+		private final CraftingTreeNode node;
+		private final long amount;
+		private final MECraftingInventory inv;
+		private final BaseActionSource src;
+		private IAEItemStack result;
+		private Exception failure;
+
+		private InputRequest(final CraftingJob job, final CraftingTreeNode node, final long amount, final MECraftingInventory inv, final BaseActionSource src)
+		{
+			this.job = job;
+			this.node = node;
+			this.amount = amount;
+			this.inv = inv;
+			this.src = src;
+		}
+
+		@Override
+		protected void compute()
+		{
+			try
+			{
+				this.job.beginCalculation();
+				this.result = this.node.request(this.inv, this.amount, this.src);
+			}
+			catch (final CraftBranchFailure | InterruptedException e)
+			{
+				this.failure = e;
+			}
+			finally
+			{
+				this.job.endCalculation();
+			}
+		}
+	}
+
+	/**
+	 * Inventory of a branch: the items of the branch available in the target, changes are passed to the target
+	 */
+	private static final class BranchInventory implements IMEInventory<IAEItemStack>
+	{
+		private final MECraftingInventory target;
+		private final Set<Item> items;
+
+		private BranchInventory(final MECraftingInventory target, final Set<Item> items)
+		{
+			this.target = target;
+			this.items = items;
+		}
+
+		@Override
+		public IAEItemStack injectItems(final IAEItemStack input, final Actionable type, final BaseActionSource src)
+		{
+			return this.target.injectItems(input, type, src);
+		}
+
+		@Override
+		public IAEItemStack extractItems(final IAEItemStack request, final Actionable mode, final BaseActionSource src)
+		{
+			return this.target.extractItems(request, mode, src);
+		}
+
+		@Override
+		public IItemList<IAEItemStack> getAvailableItems(final IItemList<IAEItemStack> out)
+		{
+			for (final IAEItemStack is : this.target.getItemList())
+			{
+				if (this.items.contains(is.getItem()))
+					out.add(is);
+			}
+			return out;
+		}
+
+		@Override
+		public StorageChannel getChannel()
+		{
+			return StorageChannel.ITEMS;
+		}
+	}
+	// TODO gamerforEA code end
+
 	void dive(final CraftingJob job)
 	{
 		job.addTask(this.getAmountCrafted(this.parent.getStack(1)), this.crafts, this.details, this.depth);
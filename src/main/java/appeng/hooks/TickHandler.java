@@ -19,14 +19,12 @@
 package appeng.hooks;
 
 import appeng.api.AEApi;
-import appeng.api.networking.IGrid;
 import appeng.api.networking.IGridHost;
 import appeng.api.networking.IGridNode;
 import appeng.api.networking.storage.IStorageGrid;
 import appeng.api.parts.CableRenderMode;
 import appeng.api.util.AEColor;
 import appeng.core.AEConfig;
-import appeng.core.AELog;
 import appeng.core.CommonHelper;
 import appeng.core.sync.packets.PacketPaintedEntity;
 import appeng.crafting.CraftingJob;
@@ -42,8 +40,10 @@ import appeng.tile.AEBaseTile;
 import appeng.util.IWorldCallable;
 import appeng.util.Platform;
 import com.gamerforea.ae.BusUtils;
+import com.gamerforea.ae.ChunkBusIndex;
 import com.gamerforea.ae.EventConfig;
-import com.google.common.base.Stopwatch;
+import com.gamerforea.ae.ParallelGridUpdater;
+import com.gamerforea.ae.util.CallableQueue;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
@@ -65,9 +65,15 @@ public class TickHandler
 {
 
 	public static final TickHandler INSTANCE = new TickHandler();
-	private final Queue<IWorldCallable<?>> serverQueue = new LinkedList<>();
+	// TODO gamerforEA code replace, old code:
+	// private final Queue<IWorldCallable<?>> serverQueue = new LinkedList<>();
+	private final CallableQueue serverQueue = new CallableQueue();
+	// TODO gamerforEA code end
 	private final Multimap<World, CraftingJob> craftingJobs = LinkedListMultimap.create();
-	private final WeakHashMap<World, Queue<IWorldCallable<?>>> callQueue = new WeakHashMap<>();
+	// TODO gamerforEA code replace, old code:
+	// private final WeakHashMap<World, Queue<IWorldCallable<?>>> callQueue = new WeakHashMap<>();
+	private final WeakHashMap<World, CallableQueue> callQueue = new WeakHashMap<>();
+	// TODO gamerforEA code end
 	private final HandlerRep server = new HandlerRep();
 	private final HandlerRep client = new HandlerRep();
 	private final HashMap<Integer, PlayerColor> cliPlayerColors = new HashMap<>();
@@ -87,16 +93,46 @@ public class TickHandler
 			this.serverQueue.add(c);
 		else
 		{
-			Queue<IWorldCallable<?>> queue = this.callQueue.computeIfAbsent(w, k -> new LinkedList<>());
+			// TODO gamerforEA code replace, old code:
+			// Queue<IWorldCallable<?>> queue = this.callQueue.computeIfAbsent(w, k -> new LinkedList<>());
+			final CallableQueue queue;
+			synchronized (this.callQueue)
+			{
+				queue = this.callQueue.computeIfAbsent(w, k -> new CallableQueue());
+			}
+			// TODO gamerforEA code end
 
 			queue.add(c);
 		}
 	}
 
+	// TODO gamerforEA code start
+	public CallableQueue getServerQueue()
+	{
+		return this.serverQueue;
+	}
+
+	public Map<World, CallableQueue> getCallQueues()
+	{
+		synchronized (this.callQueue)
+		{
+			return new HashMap<>(this.callQueue);
+		}
+	}
+	// TODO gamerforEA code end
+
 	public void addInit(final AEBaseTile tile)
 	{
 		if (Platform.isServer()) // for no there is no reason to care about this on the client...
-			this.getRepo().tiles.add(tile);
+		{
+			// TODO gamerforEA code start
+			final HandlerRep repo = this.getRepo();
+			synchronized (repo)
+			// TODO gamerforEA code end
+			{
+				repo.tiles.add(tile);
+			}
+		}
 	}
 
 	private HandlerRep getRepo()
@@ -109,15 +145,45 @@ public class TickHandler
 	public void addNetwork(final Grid grid)
 	{
 		if (Platform.isServer()) // for no there is no reason to care about this on the client...
-			this.getRepo().networks.add(grid);
+		{
+			// TODO gamerforEA code start
+			final HandlerRep repo = this.getRepo();
+			synchronized (repo)
+			// TODO gamerforEA code end
+			{
+				repo.networks.add(grid);
+			}
+		}
 	}
 
 	public void removeNetwork(final Grid grid)
 	{
 		if (Platform.isServer()) // for no there is no reason to care about this on the client...
-			this.getRepo().networks.remove(grid);
+		{
+			// TODO gamerforEA code start
+			final HandlerRep repo = this.getRepo();
+			synchronized (repo)
+			// TODO gamerforEA code end
+			{
+				repo.networks.remove(grid);
+			}
+		}
 	}
 
+	// TODO gamerforEA code start
+	public void addBus(final AEBasePart part, final Grid grid)
+	{
+		if (Platform.isServer())
+			this.getRepo().busIndex.add(part, grid);
+	}
+
+	public void removeBus(final AEBasePart part, final Grid grid)
+	{
+		if (Platform.isServer())
+			this.getRepo().busIndex.remove(part, grid);
+	}
+	// TODO gamerforEA code end
+
 	public Iterable<Grid> getGridList()
 	{
 		return this.getRepo().networks;
@@ -171,85 +237,25 @@ public class TickHandler
 		Chunk chunk = event.getChunk();
 		int chunkX = chunk.xPosition;
 		int chunkZ = chunk.zPosition;
-		for (Grid grid : this.getRepo().networks)
-		{
-			checkStorageBus(chunkX, chunkZ, grid);
-			if (!EventConfig.fastChunkDupeFix)
-				checkImportExportBus(chunkX, chunkZ, grid);
-		}
-	}
-
-	private static void checkStorageBus(int chunkX, int chunkZ, Grid grid)
-	{
-		IStorageGrid storageGrid = grid.getCache(IStorageGrid.class);
-		if (storageGrid != null)
+		for (ChunkBusIndex.Entry entry : this.getRepo().busIndex.get(chunk.worldObj, chunkX, chunkZ))
 		{
-			List<PartStorageBus> partsForUnregister = null;
-			for (IGridNode node : getMachines(grid, PartStorageBus.class))
+			if (needUnregister(entry.part, chunkX, chunkZ))
 			{
-				IGridHost host = node.getMachine();
-				if (host instanceof PartStorageBus)
+				if (entry.part instanceof PartStorageBus)
 				{
-					PartStorageBus bus = (PartStorageBus) host;
-					if (needUnregister(bus, chunkX, chunkZ))
-					{
-						if (partsForUnregister == null)
-							partsForUnregister = new ArrayList<>(1);
-						partsForUnregister.add(bus);
-					}
+					IStorageGrid storageGrid = entry.grid.getCache(IStorageGrid.class);
+					if (storageGrid != null)
+						storageGrid.unregisterCellProvider((PartStorageBus) entry.part);
 				}
+				else if (entry.part instanceof PartSharedItemBus)
+					((PartSharedItemBus) entry.part).resetCache();
 			}
-			if (partsForUnregister != null)
-				for (int i = 0, partsForUnregisterSize = partsForUnregister.size(); i < partsForUnregisterSize; i++)
-				{
-					PartStorageBus bus = partsForUnregister.get(i);
-					storageGrid.unregisterCellProvider(bus);
-				}
 		}
 	}
 
-	private static void checkImportExportBus(int chunkX, int chunkZ, Grid grid)
+	public static boolean isChunkCheckedBus(IGridHost machine)
 	{
-		List<PartSharedItemBus> partsForUnregister = null;
-		for (IGridNode node : getMachines(grid, PartImportBus.class))
-		{
-			IGridHost host = node.getMachine();
-			if (host instanceof PartSharedItemBus)
-			{
-				PartSharedItemBus bus = (PartSharedItemBus) host;
-				if (needUnregister(bus, chunkX, chunkZ))
-				{
-					if (partsForUnregister == null)
-						partsForUnregister = new ArrayList<>(1);
-					partsForUnregister.add(bus);
-				}
-			}
-		}
-		for (IGridNode node : getMachines(grid, PartExportBus.class))
-		{
-			IGridHost host = node.getMachine();
-			if (host instanceof PartSharedItemBus)
-			{
-				PartSharedItemBus bus = (PartSharedItemBus) host;
-				if (needUnregister(bus, chunkX, chunkZ))
-				{
-					if (partsForUnregister == null)
-						partsForUnregister = new ArrayList<>(1);
-					partsForUnregister.add(bus);
-				}
-			}
-		}
-		if (partsForUnregister != null)
-			for (int i = 0, partsForUnregisterSize = partsForUnregister.size(); i < partsForUnregisterSize; i++)
-			{
-				PartSharedItemBus bus = partsForUnregister.get(i);
-				bus.resetCache();
-			}
-	}
-
-	private static Iterable<IGridNode> getMachines(IGrid grid, Class<? extends IGridHost> clazz)
-	{
-		return grid instanceof Grid ? ((Grid) grid).getMachinesFast(clazz) : grid.getMachines(clazz);
+		return machine instanceof PartStorageBus || machine instanceof PartImportBus || machine instanceof PartExportBus;
 	}
 
 	private static boolean needUnregister(AEBasePart part, int chunkX, int chunkZ)
@@ -335,38 +341,128 @@ public class TickHandler
 					bt.onReady();
 			}
 
-			// TODO gamerforEA code start
-			boolean gridProfiling = EventConfig.gridProfiling;
-			// TODO gamerforEA code end
-
 			// tick networks.
+			/* TODO gamerforEA code replace, old code:
 			for (final Grid g : this.getRepo().networks)
 			{
-				// TODO gamerforEA code start
-				long startTime = gridProfiling ? System.nanoTime() : 0;
-				// TODO gamerforEA code end
-
 				g.update();
-
-				// TODO gamerforEA code start
-				if (gridProfiling)
-					g.pushUpdateTime(System.nanoTime() - startTime);
-				// TODO gamerforEA code end
-			}
+			} */
+			this.updateGrids(this.getRepo().networks);
+			// TODO gamerforEA code end
 
 			// cross world queue.
 			this.processQueue(this.serverQueue, null);
+
+			// TODO gamerforEA code start
+			repo.networks.compact();
+			// TODO gamerforEA code end
 		}
 
 		// world synced queue(s)
 		if (ev.type == Type.WORLD && ev.phase == Phase.START)
 		{
 			final World world = ((WorldTickEvent) ev).world;
-			final Queue<IWorldCallable<?>> queue = this.callQueue.get(world);
+
+			// TODO gamerforEA code replace, old code:
+			// final Queue<IWorldCallable<?>> queue = this.callQueue.get(world);
+			final CallableQueue queue;
+			synchronized (this.callQueue)
+			{
+				queue = this.callQueue.get(world);
+			}
+			// TODO gamerforEA code end
+
 			this.processQueue(queue, world);
 		}
 	}
 
+	// TODO gamerforEA code start
+	private int gridUpdateRound = 1;
+	private int gridUpdateTick;
+
+	private void updateGrids(final Collection<Grid> grids)
+	{
+		final boolean gridProfiling = EventConfig.gridProfiling;
+		if (EventConfig.parallelGridTicking)
+		{
+			ParallelGridUpdater.update(grids, g -> updateGrid(g, gridProfiling));
+			return;
+		}
+
+		final int budget = EventConfig.gridTickBudget;
+		if (budget <= 0)
+		{
+			for (final Grid g : grids)
+			{
+				updateGrid(g, gridProfiling);
+			}
+			return;
+		}
+
+		final long deadline = System.nanoTime() + budget * 1000L;
+		final int tick = this.gridUpdateTick = this.gridUpdateTick == Integer.MAX_VALUE ? 1 : this.gridUpdateTick + 1;
+		int round = this.gridUpdateRound;
+
+		// important grids are serviced every tick before the others
+		for (final Grid g : grids)
+		{
+			if (g.getPriority() != 0)
+			{
+				updateGrid(g, gridProfiling);
+				g.setUpdateRound(round);
+				g.setUpdateTick(tick);
+			}
+		}
+
+		// round-robin: grids deferred on the previous tick are the first not updated in this round
+		boolean updated = false;
+		for (boolean firstRound = true; ; firstRound = false)
+		{
+			boolean updatedInRound = false;
+			for (final Grid g : grids)
+			{
+				if (g.getUpdateRound() != round)
+				{
+					// already updated on this tick in the previous round
+					if (g.getUpdateTick() == tick)
+					{
+						g.setUpdateRound(round);
+						continue;
+					}
+
+					if (updated && System.nanoTime() >= deadline)
+					{
+						this.gridUpdateRound = round;
+						return;
+					}
+
+					updateGrid(g, gridProfiling);
+					g.setUpdateRound(round);
+					g.setUpdateTick(tick);
+					updated = updatedInRound = true;
+				}
+			}
+
+			round = round == Integer.MAX_VALUE ? 1 : round + 1;
+			this.gridUpdateRound = round;
+
+			// the budget is left after the round: the next round goes on until the deadline or until it finds only the grids updated on this tick
+			if (!updatedInRound && !firstRound || System.nanoTime() >= deadline)
+				return;
+		}
+	}
+
+	private static void updateGrid(final Grid g, final boolean gridProfiling)
+	{
+		final long startTime = gridProfiling ? System.nanoTime() : 0;
+
+		g.update();
+
+		if (gridProfiling)
+			g.pushUpdateTime(System.nanoTime() - startTime);
+	}
+	// TODO gamerforEA code end
+
 	private void tickColors(final HashMap<Integer, PlayerColor> playerSet)
 	{
 		final Iterator<PlayerColor> i = playerSet.values().iterator();
@@ -379,11 +475,12 @@ public class TickHandler
 		}
 	}
 
-	private void processQueue(final Queue<IWorldCallable<?>> queue, final World world)
+	private void processQueue(final CallableQueue queue, final World world)
 	{
 		if (queue == null)
 			return;
 
+		/* TODO gamerforEA code replace, old code:
 		final Stopwatch sw = Stopwatch.createStarted();
 
 		IWorldCallable<?> c = null;
@@ -400,7 +497,9 @@ public class TickHandler
 			{
 				AELog.debug(e);
 			}
-		}
+		} */
+		queue.process(world, TimeUnit.MILLISECONDS.toNanos(EventConfig.callQueueBudget));
+		// TODO gamerforEA code end
 
 		// long time = sw.elapsed( TimeUnit.MILLISECONDS );
 		// if ( time > 0 )
@@ -420,12 +519,23 @@ public class TickHandler
 
 		private Queue<AEBaseTile> tiles = new LinkedList<>();
 
-		private Collection<Grid> networks = new NetworkList();
+		// TODO gamerforEA code replace, old code:
+		// private Collection<Grid> networks = new NetworkList();
+		private NetworkList networks = new NetworkList();
+		// TODO gamerforEA code end
+
+		// TODO gamerforEA code start
+		private final ChunkBusIndex busIndex = new ChunkBusIndex();
+		// TODO gamerforEA code end
 
 		private void clear()
 		{
 			this.tiles = new LinkedList<>();
 			this.networks = new NetworkList();
+
+			// TODO gamerforEA code start
+			this.busIndex.clear();
+			// TODO gamerforEA code end
 		}
 	}
 
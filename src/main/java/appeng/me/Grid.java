@@ -22,11 +22,15 @@ import appeng.api.AEApi;
 import appeng.api.networking.*;
 import appeng.api.networking.events.MENetworkEvent;
 import appeng.api.networking.events.MENetworkPostCacheConstruction;
+import appeng.api.networking.storage.IStorageGrid;
 import appeng.api.util.IReadOnlyCollection;
 import appeng.core.worlddata.WorldData;
 import appeng.hooks.TickHandler;
+import appeng.me.cache.GridStorageCache;
+import appeng.parts.AEBasePart;
 import appeng.util.ReadOnlyCollection;
-import com.gamerforea.ae.util.LongRingBuffer;
+import com.gamerforea.ae.EventConfig;
+import com.gamerforea.ae.util.LongHistogram;
 
 import java.util.*;
 import java.util.Map.Entry;
@@ -41,17 +45,75 @@ public class Grid implements IGrid
 	private GridStorage myStorage;
 
 	// TODO gamerforEA code start
-	private static final int UPDATE_TIME_LIST_SIZE = 20;
-	private final LongRingBuffer updateTimeList = new LongRingBuffer(UPDATE_TIME_LIST_SIZE);
+	private int machinesVersion;
 
-	public long getAverageUpdateTime()
+	int getMachinesVersion()
 	{
-		return this.updateTimeList.getAverage();
+		return this.machinesVersion;
+	}
+
+	private int networkListIndex = -1;
+
+	int getNetworkListIndex()
+	{
+		return this.networkListIndex;
+	}
+
+	void setNetworkListIndex(int networkListIndex)
+	{
+		this.networkListIndex = networkListIndex;
+	}
+
+	private int updateRound;
+	private int updateTick;
+
+	public int getUpdateRound()
+	{
+		return this.updateRound;
+	}
+
+	public void setUpdateRound(int updateRound)
+	{
+		this.updateRound = updateRound;
+	}
+
+	public int getUpdateTick()
+	{
+		return this.updateTick;
+	}
+
+	public void setUpdateTick(int updateTick)
+	{
+		this.updateTick = updateTick;
+	}
+
+	private LongHistogram updateTimes;
+	private final Map<Class<? extends IGridCache>, LongHistogram> cacheUpdateTimes = new LinkedHashMap<>();
+
+	public LongHistogram getUpdateTimes()
+	{
+		return this.updateTimes;
+	}
+
+	public Map<Class<? extends IGridCache>, LongHistogram> getCacheUpdateTimes()
+	{
+		return Collections.unmodifiableMap(this.cacheUpdateTimes);
 	}
 
 	public void pushUpdateTime(long updateTime)
 	{
-		this.updateTimeList.push(updateTime);
+		LongHistogram updateTimes = this.updateTimes;
+		if (updateTimes == null)
+			this.updateTimes = updateTimes = new LongHistogram(EventConfig.gridProfilingWindow);
+		updateTimes.push(updateTime);
+	}
+
+	private void pushCacheUpdateTime(Class<? extends IGridCache> cacheClass, long updateTime)
+	{
+		LongHistogram updateTimes = this.cacheUpdateTimes.get(cacheClass);
+		if (updateTimes == null)
+			this.cacheUpdateTimes.put(cacheClass, updateTimes = new LongHistogram(EventConfig.gridProfilingWindow));
+		updateTimes.push(updateTime);
 	}
 	// TODO gamerforEA code end
 
@@ -76,7 +138,10 @@ public class Grid implements IGrid
 		center.setGrid(this);
 	}
 
-	int getPriority()
+	// TODO gamerforEA code replace, old code:
+	// int getPriority()
+	public int getPriority()
+	// TODO gamerforEA code end
 	{
 		return this.priority;
 	}
@@ -119,6 +184,19 @@ public class Grid implements IGrid
 		if (nodes != null)
 			nodes.remove(gridNode);
 
+		// TODO gamerforEA code start
+		this.machinesVersion++;
+		// TODO gamerforEA code end
+
+		// TODO gamerforEA code start
+		if (EventConfig.experimentalChunkDupeFix)
+		{
+			final IGridHost machine = gridNode.getMachine();
+			if (TickHandler.isChunkCheckedBus(machine))
+				TickHandler.INSTANCE.removeBus((AEBasePart) machine, this);
+		}
+		// TODO gamerforEA code end
+
 		gridNode.setGridStorage(null);
 
 		if (this.pivot == gridNode)
@@ -200,12 +278,25 @@ public class Grid implements IGrid
 		// track node.
 		nodes.add(gridNode);
 
+		// TODO gamerforEA code start
+		this.machinesVersion++;
+		// TODO gamerforEA code end
+
 		for (final IGridCache cache : this.caches.values())
 		{
 			final IGridHost machine = gridNode.getMachine();
 			cache.addNode(gridNode, machine);
 		}
 
+		// TODO gamerforEA code start
+		if (EventConfig.experimentalChunkDupeFix)
+		{
+			final IGridHost machine = gridNode.getMachine();
+			if (TickHandler.isChunkCheckedBus(machine))
+				TickHandler.INSTANCE.addBus((AEBasePart) machine, this);
+		}
+		// TODO gamerforEA code end
+
 		gridNode.getGridProxy().gridChanged();
 		// postEventTo( gridNode, networkChanged );
 	}
@@ -279,14 +370,47 @@ public class Grid implements IGrid
 
 	public void update()
 	{
+		// TODO gamerforEA code start
+		if (EventConfig.gridProfiling)
+		{
+			for (final Entry<Class<? extends IGridCache>, GridCacheWrapper> entry : this.caches.entrySet())
+			{
+				if (this.pivot != null)
+				{
+					long startTime = System.nanoTime();
+					entry.getValue().onUpdateTick();
+					this.pushCacheUpdateTime(entry.getKey(), System.nanoTime() - startTime);
+				}
+			}
+			this.onUpdateTickEnd();
+			return;
+		}
+		// TODO gamerforEA code end
+
 		// are there any nodes left?
 		for (final IGridCache gc : this.caches.values())
 		{
 			if (this.pivot != null)
 				gc.onUpdateTick();
 		}
+
+		// TODO gamerforEA code start
+		this.onUpdateTickEnd();
+		// TODO gamerforEA code end
 	}
 
+	// TODO gamerforEA code start
+	private void onUpdateTickEnd()
+	{
+		if (this.pivot == null)
+			return;
+
+		final GridCacheWrapper storage = this.caches.get(IStorageGrid.class);
+		if (storage != null && storage.getCache() instanceof GridStorageCache)
+			((GridStorageCache) storage.getCache()).onGridTickEnd();
+	}
+	// TODO gamerforEA code end
+
 	void saveState()
 	{
 		for (final IGridCache c : this.caches.values())
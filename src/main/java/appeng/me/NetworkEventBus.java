@@ -22,8 +22,8 @@ import appeng.api.networking.IGridNode;
 import appeng.api.networking.events.MENetworkEvent;
 import appeng.api.networking.events.MENetworkEventSubscribe;
 import appeng.core.AELog;
-import com.google.common.collect.Lists;
 
+import java.lang.invoke.*;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.Map.Entry;
@@ -33,8 +33,26 @@ public class NetworkEventBus
 	private static final Collection<Class> READ_CLASSES = new HashSet<>();
 	private static final Map<Class<? extends MENetworkEvent>, Map<Class, MENetworkEventInfo>> EVENTS = new HashMap<>();
 
+	// TODO gamerforEA code start
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, MENetworkEvent.class);
+	private static int eventsVersion;
+	private final Map<Class<? extends MENetworkEvent>, Subscribers> subscribersCache = new HashMap<>();
+	// TODO gamerforEA code end
+
 	void readClass(final Class listAs, final Class c)
 	{
+		// TODO gamerforEA code start
+		synchronized (EVENTS)
+		{
+			this.readClass0(listAs, c);
+		}
+	}
+
+	private void readClass0(final Class listAs, final Class c)
+	{
+		// TODO gamerforEA code end
+
 		if (READ_CLASSES.contains(c))
 			return;
 		READ_CLASSES.add(c);
@@ -61,6 +79,10 @@ public class NetworkEventBus
 							thisEvent.Add(types[0], c, m);
 
 							classEvents.put(listAs, thisEvent);
+
+							// TODO gamerforEA code start
+							eventsVersion++;
+							// TODO gamerforEA code end
 						}
 						else
 							throw new IllegalStateException("Invalid ME Network Event Subscriber, " + m.getName() + "s Parameter must extend MENetworkEvent.");
@@ -78,6 +100,7 @@ public class NetworkEventBus
 
 	MENetworkEvent postEvent(final Grid g, final MENetworkEvent e)
 	{
+		/* TODO gamerforEA code replace, old code:
 		final Map<Class, MENetworkEventInfo> subscribers = EVENTS.get(e.getClass());
 		int x = 0;
 
@@ -94,14 +117,27 @@ public class NetworkEventBus
 						target.invoke(cache.getCache(), e);
 					}
 
-					// TODO gamerforEA code replace: g.getMachines(subscriber.getKey()) -> Lists.newArrayList(g.getMachines(subscriber.getKey()))
-					for (final IGridNode obj : Lists.newArrayList(g.getMachines(subscriber.getKey())))
+					for (final IGridNode obj : g.getMachines(subscriber.getKey()))
 					{
 						x++;
 						target.invoke(obj.getMachine(), e);
 					}
 				}
+		} */
+		final Subscribers subscribers = this.getSubscribers(g, e.getClass());
+		final Object[] targets = subscribers.targets;
+		final MENetworkEventInfo[] infos = subscribers.infos;
+		int x = 0;
+
+		try
+		{
+			for (int i = 0; i < targets.length; i++)
+			{
+				x++;
+				infos[i].invoke(targets[i], e);
+			}
 		}
+		// TODO gamerforEA code end
 		catch (final NetworkEventDone done)
 		{
 			// Early out.
@@ -111,6 +147,85 @@ public class NetworkEventBus
 		return e;
 	}
 
+	// TODO gamerforEA code start
+	private Subscribers getSubscribers(final Grid g, final Class<? extends MENetworkEvent> eventClass)
+	{
+		final Subscribers cached = this.subscribersCache.get(eventClass);
+		final int gridVersion = g.getMachinesVersion();
+		if (cached != null && cached.gridVersion == gridVersion && cached.eventsVersion == eventsVersion)
+			return cached;
+
+		final List<Object> targets = new ArrayList<>();
+		final List<MENetworkEventInfo> infos = new ArrayList<>();
+		final int eventsVersion;
+		synchronized (EVENTS)
+		{
+			eventsVersion = NetworkEventBus.eventsVersion;
+			final Map<Class, MENetworkEventInfo> subscribers = EVENTS.get(eventClass);
+			if (subscribers != null)
+				for (final Entry<Class, MENetworkEventInfo> subscriber : subscribers.entrySet())
+				{
+					final MENetworkEventInfo target = subscriber.getValue();
+					final GridCacheWrapper cache = g.getCaches().get(subscriber.getKey());
+					if (cache != null)
+					{
+						targets.add(cache.getCache());
+						infos.add(target);
+					}
+
+					for (final IGridNode obj : g.getMachines(subscriber.getKey()))
+					{
+						targets.add(obj.getMachine());
+						infos.add(target);
+					}
+				}
+		}
+
+		final Subscribers result = new Subscribers(gridVersion, eventsVersion, targets.toArray(), infos.toArray(new MENetworkEventInfo[0]));
+		this.subscribersCache.put(eventClass, result);
+		return result;
+	}
+
+	private static EventInvoker createInvoker(final Method method) throws IllegalAccessException
+	{
+		final MethodHandle handle = LOOKUP.unreflect(method);
+		try
+		{
+			final MethodType instantiatedType = MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]);
+			final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "invoke", MethodType.methodType(EventInvoker.class), INVOKER_TYPE, handle, instantiatedType);
+			return (EventInvoker) site.getTarget().invokeExact();
+		}
+		catch (final Throwable t)
+		{
+			// fallback for subscribers not visible for LambdaMetafactory
+			final MethodHandle invoker = handle.asType(INVOKER_TYPE);
+			return (obj, e) -> invoker.invokeExact(obj, e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface EventInvoker
+	{
+		void invoke(Object obj, MENetworkEvent e) throws Throwable;
+	}
+
+	private static final class Subscribers
+	{
+		private final int gridVersion;
+		private final int eventsVersion;
+		private final Object[] targets;
+		private final MENetworkEventInfo[] infos;
+
+		private Subscribers(final int gridVersion, final int eventsVersion, final Object[] targets, final MENetworkEventInfo[] infos)
+		{
+			this.gridVersion = gridVersion;
+			this.eventsVersion = eventsVersion;
+			this.targets = targets;
+			this.infos = infos;
+		}
+	}
+	// TODO gamerforEA code end
+
 	MENetworkEvent postEventTo(final Grid grid, final GridNode node, final MENetworkEvent e)
 	{
 		final Map<Class, MENetworkEventInfo> subscribers = EVENTS.get(e.getClass());
@@ -149,18 +264,30 @@ public class NetworkEventBus
 		private final Method objMethod;
 		private final Class objEvent;
 
-		public EventMethod(final Class Event, final Class ObjClass, final Method ObjMethod)
+		// TODO gamerforEA code start
+		private final EventInvoker invoker;
+		// TODO gamerforEA code end
+
+		// TODO gamerforEA add throws IllegalAccessException
+		public EventMethod(final Class Event, final Class ObjClass, final Method ObjMethod) throws IllegalAccessException
 		{
 			this.objClass = ObjClass;
 			this.objMethod = ObjMethod;
 			this.objEvent = Event;
+
+			// TODO gamerforEA code start
+			this.invoker = createInvoker(ObjMethod);
+			// TODO gamerforEA code end
 		}
 
 		private void invoke(final Object obj, final MENetworkEvent e) throws NetworkEventDone
 		{
 			try
 			{
-				this.objMethod.invoke(obj, e);
+				// TODO gamerforEA code replace, old code:
+				// this.objMethod.invoke(obj, e);
+				this.invoker.invoke(obj, e);
+				// TODO gamerforEA code end
 			}
 			catch (final Throwable e1)
 			{
@@ -180,7 +307,8 @@ public class NetworkEventBus
 	{
 		private final List<EventMethod> methods = new ArrayList<>();
 
-		private void Add(final Class Event, final Class ObjClass, final Method ObjMethod)
+		// TODO gamerforEA add throws IllegalAccessException
+		private void Add(final Class Event, final Class ObjClass, final Method ObjMethod) throws IllegalAccessException
 		{
 			this.methods.add(new EventMethod(Event, ObjClass, ObjMethod));
 		}
@@ -18,149 +18,266 @@
 
 package appeng.me;
 
-import com.gamerforea.ae.EventConfig;
-
+import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
+// TODO gamerforEA code replace, old code: LinkedList copied on every modification
+/**
+ * Array-backed list of grids in insertion order. Every grid stores its slot index, so removal is O(1): the slot is
+ * cleared and the list is compacted by {@link #compact()} at the end of the server tick (or when the array is full).
+ * Iterators skip the cleared slots, so a grid removed during an iteration is not returned anymore, and don't return
+ * the grids added after their creation. Iterators must not be kept until the list is compacted.
+ * A grid can be contained only in one NetworkList.
+ */
 public class NetworkList implements Collection<Grid>
 {
-	private List<Grid> networks = new LinkedList<>();
+	private static final Grid[] EMPTY_ARRAY = new Grid[0];
+
+	private Grid[] networks = EMPTY_ARRAY;
 
-	// TODO gamerforEA code start
-	private boolean iteratorCreated;
+	/**
+	 * Used slots, including the cleared ones
+	 */
+	private int end;
+	private int size;
 
 	@Override
-	public boolean removeIf(Predicate<? super Grid> filter)
+	public int size()
 	{
-		this.copy();
-		return this.networks.removeIf(filter);
+		return this.size;
 	}
 
 	@Override
-	public Spliterator<Grid> spliterator()
+	public boolean isEmpty()
 	{
-		return this.networks.spliterator();
+		return this.size == 0;
 	}
 
 	@Override
-	public Stream<Grid> stream()
+	public boolean contains(final Object o)
 	{
-		return this.networks.stream();
+		return o instanceof Grid && this.indexOf((Grid) o) >= 0;
 	}
 
 	@Override
-	public Stream<Grid> parallelStream()
+	public Iterator<Grid> iterator()
 	{
-		return this.networks.parallelStream();
+		return new ArrayIterator(this.networks, this.end);
 	}
 
 	@Override
-	public void forEach(Consumer<? super Grid> action)
+	public Spliterator<Grid> spliterator()
 	{
-		this.networks.forEach(action);
+		return Spliterators.spliterator(this.toArray(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
 	}
-	// TODO gamerforEA code end
 
 	@Override
-	public int size()
+	public void forEach(final Consumer<? super Grid> action)
 	{
-		return this.networks.size();
+		final Grid[] networks = this.networks;
+		for (int i = 0, end = this.end; i < end; i++)
+		{
+			final Grid grid = networks[i];
+			if (grid != null)
+				action.accept(grid);
+		}
 	}
 
 	@Override
-	public boolean isEmpty()
+	public Object[] toArray()
 	{
-		return this.networks.isEmpty();
+		return this.toArray(new Object[this.size]);
 	}
 
 	@Override
-	public boolean contains(final Object o)
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a)
 	{
-		return this.networks.contains(o);
+		final int size = this.size;
+		if (a.length < size)
+			a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		final Grid[] networks = this.networks;
+		int j = 0;
+		for (int i = 0, end = this.end; i < end; i++)
+		{
+			final Grid grid = networks[i];
+			if (grid != null)
+				a[j++] = (T) grid;
+		}
+		if (a.length > size)
+			a[size] = null;
+		return a;
 	}
 
 	@Override
-	public Iterator<Grid> iterator()
+	public boolean add(final Grid e)
 	{
-		// TODO gamerforEA code start
-		this.iteratorCreated = true;
-		// TODO gamerforEA code end
+		if (this.indexOf(e) >= 0)
+			return false;
 
-		return this.networks.iterator();
+		// The grids may be added during an iteration, so the full array is never compacted in place
+		if (this.end == this.networks.length)
+			this.compactInto(new Grid[Math.max(16, this.size + (this.size >> 1) + 1)]);
+		final int index = this.end++;
+		this.networks[index] = e;
+		e.setNetworkListIndex(index);
+		this.size++;
+		return true;
 	}
 
 	@Override
-	public Object[] toArray()
+	public boolean remove(final Object o)
 	{
-		return this.networks.toArray();
+		if (!(o instanceof Grid))
+			return false;
+
+		final int index = this.indexOf((Grid) o);
+		if (index < 0)
+			return false;
+
+		this.removeAt(index);
+		return true;
 	}
 
 	@Override
-	public <T> T[] toArray(final T[] a)
+	public boolean containsAll(final Collection<?> c)
 	{
-		return this.networks.toArray(a);
+		for (final Object o : c)
+		{
+			if (!this.contains(o))
+				return false;
+		}
+		return true;
 	}
 
 	@Override
-	public boolean add(final Grid e)
+	public boolean addAll(final Collection<? extends Grid> c)
 	{
-		this.copy();
-		return this.networks.add(e);
+		boolean modified = false;
+		for (final Grid grid : c)
+		{
+			modified |= this.add(grid);
+		}
+		return modified;
 	}
 
 	@Override
-	public boolean remove(final Object o)
+	public boolean removeAll(final Collection<?> c)
 	{
-		this.copy();
-		return this.networks.remove(o);
+		return this.removeIf(c::contains);
 	}
 
 	@Override
-	public boolean containsAll(final Collection<?> c)
+	public boolean retainAll(final Collection<?> c)
 	{
-		return this.networks.containsAll(c);
+		return this.removeIf(grid -> !c.contains(grid));
 	}
 
 	@Override
-	public boolean addAll(final Collection<? extends Grid> c)
+	public boolean removeIf(final Predicate<? super Grid> filter)
 	{
-		this.copy();
-		return this.networks.addAll(c);
+		boolean modified = false;
+		final Grid[] networks = this.networks;
+		for (int i = 0, end = this.end; i < end; i++)
+		{
+			final Grid grid = networks[i];
+			if (grid != null && filter.test(grid))
+			{
+				this.removeAt(i);
+				modified = true;
+			}
+		}
+		return modified;
 	}
 
 	@Override
-	public boolean removeAll(final Collection<?> c)
+	public void clear()
 	{
-		this.copy();
-		return this.networks.removeAll(c);
+		for (int i = 0; i < this.end; i++)
+		{
+			final Grid grid = this.networks[i];
+			if (grid != null)
+				grid.setNetworkListIndex(-1);
+		}
+		this.networks = EMPTY_ARRAY;
+		this.end = 0;
+		this.size = 0;
 	}
 
-	@Override
-	public boolean retainAll(final Collection<?> c)
+	/**
+	 * Removes the cleared slots keeping the order of the grids, must not be called during an iteration
+	 */
+	public void compact()
 	{
-		this.copy();
-		return this.networks.retainAll(c);
+		if (this.size != this.end)
+			this.compactInto(this.networks);
 	}
 
-	@Override
-	public void clear()
+	private void compactInto(final Grid[] target)
+	{
+		final Grid[] networks = this.networks;
+		int j = 0;
+		for (int i = 0, end = this.end; i < end; i++)
+		{
+			final Grid grid = networks[i];
+			if (grid != null)
+			{
+				target[j] = grid;
+				grid.setNetworkListIndex(j);
+				j++;
+			}
+		}
+		if (target == networks)
+			Arrays.fill(networks, j, this.end, null);
+		this.networks = target;
+		this.end = j;
+	}
+
+	private int indexOf(final Grid grid)
+	{
+		final int index = grid.getNetworkListIndex();
+		return index >= 0 && index < this.end && this.networks[index] == grid ? index : -1;
+	}
+
+	private void removeAt(final int index)
 	{
-		this.networks = new LinkedList<>();
+		final Grid removed = this.networks[index];
+		this.networks[index] = null;
+		this.size--;
+		removed.setNetworkListIndex(-1);
 	}
 
-	private void copy()
+	private static final class ArrayIterator implements Iterator<Grid>
 	{
-		/* TODO gamerforEA code replace, old code:
-		final List<Grid> old = this.networks;
-		this.networks = new LinkedList<>();
-		this.networks.addAll(old); */
-		if (EventConfig.preventCopyOnWriteNetworkList && !this.iteratorCreated)
-			return;
-		this.networks = new LinkedList<>(this.networks);
-		this.iteratorCreated = false;
-		// TODO gamerforEA code end
+		private final Grid[] networks;
+		private final int end;
+		private int index;
+
+		private ArrayIterator(final Grid[] networks, final int end)
+		{
+			this.networks = networks;
+			this.end = end;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while (this.index < this.end && this.networks[this.index] == null)
+			{
+				this.index++;
+			}
+			return this.index < this.end;
+		}
+
+		@Override
+		public Grid next()
+		{
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+			return this.networks[this.index++];
+		}
 	}
 }
+// TODO gamerforEA code end
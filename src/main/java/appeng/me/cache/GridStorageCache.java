@@ -37,16 +37,17 @@ import appeng.api.storage.data.IAEFluidStack;
 import appeng.api.storage.data.IAEItemStack;
 import appeng.api.storage.data.IAEStack;
 import appeng.api.storage.data.IItemList;
+import appeng.core.AELog;
 import appeng.me.helpers.GenericInterestManager;
 import appeng.me.storage.ItemWatcher;
 import appeng.me.storage.NetworkInventoryHandler;
+import com.gamerforea.ae.EventConfig;
+import com.gamerforea.ae.LevelEmitterIndex;
+import com.gamerforea.ae.StackInterestIndex;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 public class GridStorageCache implements IStorageGrid
 {
@@ -55,13 +56,21 @@ public class GridStorageCache implements IStorageGrid
 	private final HashSet<ICellProvider> activeCellProviders = new HashSet<>();
 	private final HashSet<ICellProvider> inactiveCellProviders = new HashSet<>();
 	private final SetMultimap<IAEStack, ItemWatcher> interests = HashMultimap.create();
-	private final GenericInterestManager<ItemWatcher> interestManager = new GenericInterestManager<>(this.interests);
+	// TODO gamerforEA code replace, old code:
+	// private final GenericInterestManager<ItemWatcher> interestManager = new GenericInterestManager<>(this.interests);
+	private final StackInterestIndex<ItemWatcher> interestIndex = EventConfig.stackInterestIndex ? new StackInterestIndex<>() : null;
+	private final GenericInterestManager<ItemWatcher> interestManager = this.interestIndex == null ? new GenericInterestManager<>(this.interests) : new IndexedInterestManager();
+	// TODO gamerforEA code end
 	private final NetworkMonitor<IAEItemStack> itemMonitor = new NetworkMonitor<>(this, StorageChannel.ITEMS);
 	private final NetworkMonitor<IAEFluidStack> fluidMonitor = new NetworkMonitor<>(this, StorageChannel.FLUIDS);
 	private final HashMap<IGridNode, IStackWatcher> watchers = new HashMap<>();
 	private NetworkInventoryHandler<IAEItemStack> myItemNetwork;
 	private NetworkInventoryHandler<IAEFluidStack> myFluidNetwork;
 
+	// TODO gamerforEA code start
+	private final LevelEmitterIndex levelEmitterIndex = EventConfig.levelEmitterThresholdIndex ? new LevelEmitterIndex() : null;
+	// TODO gamerforEA code end
+
 	public GridStorageCache(final IGrid g)
 	{
 		this.myGrid = g;
@@ -72,6 +81,11 @@ public class GridStorageCache implements IStorageGrid
 	{
 		this.itemMonitor.onTick();
 		this.fluidMonitor.onTick();
+
+		// TODO gamerforEA code start
+		if (this.levelEmitterIndex != null)
+			this.levelEmitterIndex.onTick(this.itemMonitor);
+		// TODO gamerforEA code end
 	}
 
 	@Override
@@ -81,7 +95,10 @@ public class GridStorageCache implements IStorageGrid
 		{
 			final ICellContainer cc = (ICellContainer) machine;
 
-			this.getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getGrid().postEvent(new MENetworkCellArrayUpdate());
+			postCellArrayUpdate(this.getGrid(), null);
+			// TODO gamerforEA code end
 			this.removeCellProvider(cc, new CellChangeTracker()).applyChanges();
 			this.inactiveCellProviders.remove(cc);
 		}
@@ -100,6 +117,11 @@ public class GridStorageCache implements IStorageGrid
 				myWatcher.clear();
 			// TODO gamerforEA code end
 		}
+
+		// TODO gamerforEA code start
+		if (this.levelEmitterIndex != null && machine instanceof LevelEmitterIndex.Host)
+			this.levelEmitterIndex.unregister((LevelEmitterIndex.Host) machine);
+		// TODO gamerforEA code end
 	}
 
 	@Override
@@ -110,7 +132,10 @@ public class GridStorageCache implements IStorageGrid
 			final ICellContainer cc = (ICellContainer) machine;
 			this.inactiveCellProviders.add(cc);
 
-			this.getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getGrid().postEvent(new MENetworkCellArrayUpdate());
+			postCellArrayUpdate(this.getGrid(), null);
+			// TODO gamerforEA code end
 			if (node.isActive())
 				this.addCellProvider(cc, new CellChangeTracker()).applyChanges();
 		}
@@ -162,6 +187,11 @@ public class GridStorageCache implements IStorageGrid
 			{
 				tracker.postChanges(StorageChannel.FLUIDS, 1, h, actionSrc);
 			}
+
+			// TODO gamerforEA code start
+			if (EventConfig.incrementalNetworkStorage)
+				this.registerStorage(cc);
+			// TODO gamerforEA code end
 		}
 
 		return tracker;
@@ -178,10 +208,16 @@ public class GridStorageCache implements IStorageGrid
 			if (cc instanceof IActionHost)
 				actionSrc = new MachineSource((IActionHost) cc);
 
+			// TODO gamerforEA code start
+			final boolean incremental = EventConfig.incrementalNetworkStorage;
+			if (incremental)
+				this.unregisterStorage(cc);
+			// TODO gamerforEA code end
+
 			for (final IMEInventoryHandler<IAEItemStack> h : cc.getCellArray(StorageChannel.ITEMS))
 			{
 				// TODO gamerforEA code start
-				if (this.myItemNetwork != null)
+				if (!incremental && this.myItemNetwork != null)
 					this.myItemNetwork.removeNewStorage(h);
 				// TODO gamerforEA code end
 
@@ -191,7 +227,7 @@ public class GridStorageCache implements IStorageGrid
 			for (final IMEInventoryHandler<IAEFluidStack> h : cc.getCellArray(StorageChannel.FLUIDS))
 			{
 				// TODO gamerforEA code start
-				if (this.myFluidNetwork != null)
+				if (!incremental && this.myFluidNetwork != null)
 					this.myFluidNetwork.removeNewStorage(h);
 				// TODO gamerforEA code end
 
@@ -202,11 +238,81 @@ public class GridStorageCache implements IStorageGrid
 		return tracker;
 	}
 
+	// TODO gamerforEA code start
+	private boolean cellUpdatePending;
+
+	/**
+	 * Providers whose cell arrays changed since the last update, see {@link #postCellArrayUpdate}
+	 */
+	private final Set<ICellProvider> dirtyCellProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Set when a {@link MENetworkCellArrayUpdate} was posted without naming its source (other mods, older code),
+	 * every active provider is synchronized then
+	 */
+	private boolean allCellProvidersDirty;
+	private boolean cellUpdateSourceKnown;
+
+	/**
+	 * Posts {@link MENetworkCellArrayUpdate} for a provider whose cell array (cells, priority, partition or
+	 * activity) changed, so that the incremental network storage only synchronizes this provider
+	 *
+	 * @param provider changed provider or null if only providers were added to or removed from the grid
+	 */
+	public static void postCellArrayUpdate(final IGrid grid, final ICellProvider provider)
+	{
+		final IStorageGrid storage = grid.getCache(IStorageGrid.class);
+		if (storage instanceof GridStorageCache)
+		{
+			final GridStorageCache cache = (GridStorageCache) storage;
+			if (provider != null)
+				cache.dirtyCellProviders.add(provider);
+			cache.cellUpdateSourceKnown = true;
+		}
+		grid.postEvent(new MENetworkCellArrayUpdate());
+	}
+
+	public void onGridTickEnd()
+	{
+		this.flushCellUpdate();
+	}
+
+	private void flushCellUpdate()
+	{
+		if (this.cellUpdatePending)
+		{
+			this.cellUpdatePending = false;
+			this.updateCellProviders();
+		}
+	}
+	// TODO gamerforEA code end
+
 	@MENetworkEventSubscribe
 	public void cellUpdate(final MENetworkCellArrayUpdate ev)
 	{
-		this.myItemNetwork = null;
-		this.myFluidNetwork = null;
+		// TODO gamerforEA code start
+		if (!this.cellUpdateSourceKnown)
+			this.allCellProvidersDirty = true;
+		this.cellUpdateSourceKnown = false;
+
+		if (EventConfig.coalesceCellArrayUpdates)
+		{
+			this.cellUpdatePending = true;
+			return;
+		}
+
+		this.updateCellProviders();
+	}
+
+	private void updateCellProviders()
+	{
+		final boolean incremental = EventConfig.incrementalNetworkStorage;
+		if (!incremental)
+		{
+			this.myItemNetwork = null;
+			this.myFluidNetwork = null;
+		}
+		// TODO gamerforEA code end
 
 		final LinkedList<ICellProvider> ll = new LinkedList();
 		ll.addAll(this.inactiveCellProviders);
@@ -230,8 +336,37 @@ public class GridStorageCache implements IStorageGrid
 				this.removeCellProvider(cc, tracker);
 		}
 
-		this.itemMonitor.forceUpdate();
-		this.fluidMonitor.forceUpdate();
+		// TODO gamerforEA code start
+		boolean changed = !incremental || tracker.hasChanges();
+		if (incremental)
+		{
+			final boolean all = this.allCellProvidersDirty;
+			this.allCellProvidersDirty = false;
+			for (final ICellProvider cc : all ? this.activeCellProviders : this.dirtyCellProviders)
+			{
+				if (this.activeCellProviders.contains(cc))
+					changed |= this.registerStorage(cc);
+			}
+			this.dirtyCellProviders.clear();
+			changed |= this.checkNetworkStorage();
+
+			// Partition lists may change without replacing the handler
+			if (this.myItemNetwork != null)
+				this.myItemNetwork.invalidateRoutes();
+			if (this.myFluidNetwork != null)
+				this.myFluidNetwork.invalidateRoutes();
+		}
+		else
+			this.dirtyCellProviders.clear();
+
+		if (changed)
+		{
+			// TODO gamerforEA code end
+			this.itemMonitor.forceUpdate();
+			this.fluidMonitor.forceUpdate();
+			// TODO gamerforEA code start
+		}
+		// TODO gamerforEA code end
 
 		tracker.applyChanges();
 	}
@@ -252,6 +387,10 @@ public class GridStorageCache implements IStorageGrid
 
 	IMEInventoryHandler<IAEItemStack> getItemInventoryHandler()
 	{
+		// TODO gamerforEA code start
+		this.flushCellUpdate();
+		// TODO gamerforEA code end
+
 		if (this.myItemNetwork == null)
 			this.buildNetworkStorage(StorageChannel.ITEMS);
 		return this.myItemNetwork;
@@ -259,6 +398,7 @@ public class GridStorageCache implements IStorageGrid
 
 	private void buildNetworkStorage(final StorageChannel chan)
 	{
+		/* TODO gamerforEA code replace, old code:
 		final SecurityCache security = this.getGrid().getCache(ISecurityGrid.class);
 
 		switch (chan)
@@ -284,11 +424,156 @@ public class GridStorageCache implements IStorageGrid
 				}
 				break;
 			default:
+		} */
+		switch (chan)
+		{
+			case FLUIDS:
+				this.registeredFluidStorage.clear();
+				this.myFluidNetwork = this.createNetworkStorage(chan, this.registeredFluidStorage);
+				break;
+			case ITEMS:
+				this.registeredItemStorage.clear();
+				this.myItemNetwork = this.createNetworkStorage(chan, this.registeredItemStorage);
+				break;
+			default:
+		}
+		// TODO gamerforEA code end
+	}
+
+	// TODO gamerforEA code start
+	private final Map<ICellProvider, List<IMEInventoryHandler<IAEItemStack>>> registeredItemStorage = new IdentityHashMap<>();
+	private final Map<ICellProvider, List<IMEInventoryHandler<IAEFluidStack>>> registeredFluidStorage = new IdentityHashMap<>();
+
+	private <T extends IAEStack<T>> NetworkInventoryHandler<T> createNetworkStorage(final StorageChannel chan, final Map<ICellProvider, List<IMEInventoryHandler<T>>> registeredStorage)
+	{
+		final SecurityCache security = this.getGrid().getCache(ISecurityGrid.class);
+		final NetworkInventoryHandler<T> network = new NetworkInventoryHandler<>(chan, security);
+		for (final ICellProvider cc : this.activeCellProviders)
+		{
+			final List<IMEInventoryHandler<T>> handlers = (List) cc.getCellArray(chan);
+			for (final IMEInventoryHandler<T> h : handlers)
+			{
+				network.addNewStorage(h);
+			}
+
+			if (registeredStorage != null && !handlers.isEmpty())
+				registeredStorage.put(cc, new ArrayList<>(handlers));
+		}
+		return network;
+	}
+
+	/**
+	 * @return true if a handler was added, removed or moved to another priority
+	 */
+	private boolean registerStorage(final ICellProvider cc)
+	{
+		boolean changed = false;
+		if (this.myItemNetwork != null)
+			changed = syncStorage(this.myItemNetwork, this.registeredItemStorage, cc, (List) cc.getCellArray(StorageChannel.ITEMS));
+		if (this.myFluidNetwork != null)
+			changed |= syncStorage(this.myFluidNetwork, this.registeredFluidStorage, cc, (List) cc.getCellArray(StorageChannel.FLUIDS));
+		return changed;
+	}
+
+	private void unregisterStorage(final ICellProvider cc)
+	{
+		if (this.myItemNetwork != null)
+			syncStorage(this.myItemNetwork, this.registeredItemStorage, cc, Collections.emptyList());
+		if (this.myFluidNetwork != null)
+			syncStorage(this.myFluidNetwork, this.registeredFluidStorage, cc, Collections.emptyList());
+	}
+
+	private static <T extends IAEStack<T>> boolean syncStorage(final NetworkInventoryHandler<T> network, final Map<ICellProvider, List<IMEInventoryHandler<T>>> registeredStorage, final ICellProvider cc, final List<IMEInventoryHandler<T>> handlers)
+	{
+		boolean changed = false;
+		final List<IMEInventoryHandler<T>> registered = registeredStorage.get(cc);
+		if (registered != null)
+			for (final IMEInventoryHandler<T> h : registered)
+			{
+				if (!containsIdentity(handlers, h))
+				{
+					network.removeNewStorage(h);
+					changed = true;
+				}
+			}
+
+		for (final IMEInventoryHandler<T> h : handlers)
+		{
+			if (registered != null && containsIdentity(registered, h))
+				changed |= network.updateStoragePriority(h);
+			else
+			{
+				network.addNewStorage(h);
+				changed = true;
+			}
+		}
+
+		if (handlers.isEmpty())
+			registeredStorage.remove(cc);
+		else if (changed)
+			registeredStorage.put(cc, new ArrayList<>(handlers));
+		return changed;
+	}
+
+	private static boolean containsIdentity(final List<?> list, final Object o)
+	{
+		for (int i = 0, size = list.size(); i < size; i++)
+		{
+			if (list.get(i) == o)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if a network storage was rebuilt
+	 */
+	private boolean checkNetworkStorage()
+	{
+		boolean rebuilt = false;
+		if (this.myItemNetwork != null && !this.isNetworkStorageValid(StorageChannel.ITEMS, this.myItemNetwork, this.registeredItemStorage))
+		{
+			this.buildNetworkStorage(StorageChannel.ITEMS);
+			rebuilt = true;
+		}
+		if (this.myFluidNetwork != null && !this.isNetworkStorageValid(StorageChannel.FLUIDS, this.myFluidNetwork, this.registeredFluidStorage))
+		{
+			this.buildNetworkStorage(StorageChannel.FLUIDS);
+			rebuilt = true;
 		}
+		return rebuilt;
 	}
 
+	private <T extends IAEStack<T>> boolean isNetworkStorageValid(final StorageChannel chan, final NetworkInventoryHandler<T> network, final Map<ICellProvider, List<IMEInventoryHandler<T>>> registeredStorage)
+	{
+		int count = 0;
+		for (final List<IMEInventoryHandler<T>> handlers : registeredStorage.values())
+		{
+			count += handlers.size();
+		}
+
+		if (network.getStorageCount() != count)
+		{
+			AELog.warn("Incremental " + chan + " network storage is inconsistent (" + network.getStorageCount() + " handlers instead of " + count + "), rebuilding");
+			return false;
+		}
+
+		if (EventConfig.verifyIncrementalNetworkStorage && !network.hasSameStorage(this.createNetworkStorage(chan, null)))
+		{
+			AELog.warn("Incremental " + chan + " network storage differs from the rebuilt one, rebuilding");
+			return false;
+		}
+
+		return true;
+	}
+	// TODO gamerforEA code end
+
 	IMEInventoryHandler<IAEFluidStack> getFluidInventoryHandler()
 	{
+		// TODO gamerforEA code start
+		this.flushCellUpdate();
+		// TODO gamerforEA code end
+
 		if (this.myFluidNetwork == null)
 			this.buildNetworkStorage(StorageChannel.FLUIDS);
 		return this.myFluidNetwork;
@@ -334,6 +619,57 @@ public class GridStorageCache implements IStorageGrid
 		return this.interestManager;
 	}
 
+	// TODO gamerforEA code start
+
+	/**
+	 * @return null if disabled
+	 */
+	StackInterestIndex<ItemWatcher> getInterestIndex()
+	{
+		return this.interestIndex;
+	}
+
+	/**
+	 * @return null if disabled
+	 */
+	public LevelEmitterIndex getLevelEmitterIndex()
+	{
+		return this.levelEmitterIndex;
+	}
+
+	/**
+	 * Mirrors the interests to {@link #interestIndex} once they are actually applied to the multimap
+	 * (changes are deferred while transactions are enabled)
+	 */
+	private final class IndexedInterestManager extends GenericInterestManager<ItemWatcher>
+	{
+		private IndexedInterestManager()
+		{
+			super(GridStorageCache.this.interests);
+		}
+
+		@Override
+		public boolean put(final IAEStack stack, final ItemWatcher iw)
+		{
+			final boolean result = super.put(stack, iw);
+			if (GridStorageCache.this.interests.containsEntry(stack, iw))
+				GridStorageCache.this.interestIndex.add(stack, iw);
+			return result;
+		}
+
+		@Override
+		public boolean remove(final IAEStack stack, final ItemWatcher iw)
+		{
+			final boolean result = super.remove(stack, iw);
+			if (GridStorageCache.this.interests.containsEntry(stack, iw))
+				GridStorageCache.this.interestIndex.add(stack, iw);
+			else
+				GridStorageCache.this.interestIndex.remove(stack, iw);
+			return result;
+		}
+	}
+	// TODO gamerforEA code end
+
 	IGrid getGrid()
 	{
 		return this.myGrid;
@@ -384,5 +720,12 @@ public class GridStorageCache implements IStorageGrid
 				rec.applyChanges();
 			}
 		}
+
+		// TODO gamerforEA code start
+		public boolean hasChanges()
+		{
+			return !this.data.isEmpty();
+		}
+		// TODO gamerforEA code end
 	}
 }
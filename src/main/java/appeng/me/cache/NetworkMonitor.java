@@ -26,10 +26,14 @@ import appeng.api.storage.IMEInventoryHandler;
 import appeng.api.storage.IMEMonitor;
 import appeng.api.storage.IMEMonitorHandlerReceiver;
 import appeng.api.storage.StorageChannel;
+import appeng.api.storage.data.IAEItemStack;
 import appeng.api.storage.data.IAEStack;
 import appeng.api.storage.data.IItemList;
 import appeng.me.storage.ItemWatcher;
+import appeng.util.item.HashItemList;
 import com.gamerforea.ae.EventConfig;
+import com.gamerforea.ae.LevelEmitterIndex;
+import com.gamerforea.ae.StackInterestIndex;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
@@ -42,8 +46,13 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 {
+	/* TODO gamerforEA code replace, old code:
 	@Nonnull
-	private static final Deque<NetworkMonitor<?>> GLOBAL_DEPTH = Lists.newLinkedList();
+	private static final Deque<NetworkMonitor<?>> GLOBAL_DEPTH = Lists.newLinkedList(); */
+	// Grids of different worlds may be updated on several threads (EventConfig.parallelGridTicking)
+	@Nonnull
+	private static final ThreadLocal<Deque<NetworkMonitor<?>>> GLOBAL_DEPTH = ThreadLocal.withInitial(Lists::newLinkedList);
+	// TODO gamerforEA code end
 
 	@Nonnull
 	private final GridStorageCache myGridCache;
@@ -69,7 +78,10 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 	{
 		this.myGridCache = cache;
 		this.myChannel = chan;
-		this.cachedList = (IItemList<T>) chan.createList();
+		// TODO gamerforEA code replace, old code:
+		// this.cachedList = (IItemList<T>) chan.createList();
+		this.cachedList = (IItemList<T>) (EventConfig.hashItemListNetwork && chan == StorageChannel.ITEMS ? new HashItemList() : chan.createList());
+		// TODO gamerforEA code end
 	}
 
 	@Override
@@ -103,6 +115,10 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 
 		if (this.localDepthSemaphore == 0)
 			this.monitorDifference(request.copy(), leftover, true, src);
+		// TODO gamerforEA code start
+		else if (GLOBAL_DEPTH.get().contains(this))
+			this.hasChanged = true;
+		// TODO gamerforEA code end
 
 		return leftover;
 	}
@@ -144,6 +160,11 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 		if (this.hasChanged)
 		{
 			this.hasChanged = false;
+
+			// TODO gamerforEA code start
+			this.ticksSinceFullUpdate = 0;
+			// TODO gamerforEA code end
+
 			this.cachedList.resetStatus();
 			return this.getAvailableItems(this.cachedList);
 		}
@@ -163,6 +184,10 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 
 		if (this.localDepthSemaphore == 0)
 			this.monitorDifference(input.copy(), leftover, false, src);
+		// TODO gamerforEA code start
+		else if (GLOBAL_DEPTH.get().contains(this))
+			this.hasChanged = true;
+		// TODO gamerforEA code end
 
 		return leftover;
 	}
@@ -215,14 +240,24 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 			diff.decStackSize(leftOvers.getStackSize());
 
 		if (diff.getStackSize() != 0)
-			this.postChangesToListeners(ImmutableList.of(diff), src);
+			// TODO gamerforEA code replace, old code:
+			// this.postChangesToListeners(ImmutableList.of(diff), src);
+			if (EventConfig.batchNetworkChanges)
+				this.bufferChange(diff, src);
+			else
+				this.postChangesToListeners(ImmutableList.of(diff), src);
+		// TODO gamerforEA code end
 
 		return leftOvers;
 	}
 
 	private void notifyListenersOfChange(final Iterable<T> diff, final BaseActionSource src)
 	{
-		this.hasChanged = true;
+		// TODO gamerforEA code replace, old code:
+		// this.hasChanged = true;
+		if (!EventConfig.deltaNetworkStorageList)
+			this.hasChanged = true;
+		// TODO gamerforEA code end
 		final Iterator<Entry<IMEMonitorHandlerReceiver<T>, Object>> i = this.getListeners();
 
 		while (i.hasNext())
@@ -250,16 +285,54 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 
 	protected void postChange(final boolean add, final Iterable<T> changes, final BaseActionSource src)
 	{
-		if (this.localDepthSemaphore > 0 || GLOBAL_DEPTH.contains(this))
+		// TODO gamerforEA code start
+		this.postChange(add, changes, src, false);
+	}
+
+	/**
+	 * @param applied the changes are already in the cached list (buffered changes), only the listeners are notified
+	 */
+	private void postChange(final boolean add, final Iterable<T> changes, final BaseActionSource src, final boolean applied)
+	{
+		/* TODO gamerforEA code replace, old code:
+		if (this.localDepthSemaphore > 0 || GLOBAL_DEPTH.contains(this)) */
+		if (this.localDepthSemaphore > 0 || GLOBAL_DEPTH.get().contains(this))
+		// TODO gamerforEA code end
+		{
+			// TODO gamerforEA code start
+			// Changes made while this monitor is posting are dropped, the delta-maintained list must be rebuilt
+			if (!applied && GLOBAL_DEPTH.get().contains(this))
+				this.hasChanged = true;
+
+			final LevelEmitterIndex levelEmitterIndex = this.getLevelEmitterIndex();
+			if (levelEmitterIndex != null)
+				levelEmitterIndex.markDirty();
+			// TODO gamerforEA code end
+
 			return;
+		}
 
-		GLOBAL_DEPTH.push(this);
+		// TODO gamerforEA code replace, old code:
+		// GLOBAL_DEPTH.push(this);
+		GLOBAL_DEPTH.get().push(this);
+		// TODO gamerforEA code end
 		this.localDepthSemaphore++;
 
 		this.sendEvent = true;
 
+		// TODO gamerforEA code start
+		if (EventConfig.deltaNetworkStorageList && !applied)
+			this.applyChanges(add, changes);
+		// TODO gamerforEA code end
+
 		this.notifyListenersOfChange(changes, src);
 
+		// TODO gamerforEA code start
+		final LevelEmitterIndex levelEmitterIndex = this.getLevelEmitterIndex();
+		if (levelEmitterIndex != null)
+			levelEmitterIndex.postChange(add, (Iterable<IAEItemStack>) changes, (IMEMonitor<IAEItemStack>) this);
+		// TODO gamerforEA code end
+
 		for (final T changedItem : changes)
 		{
 			T difference = changedItem;
@@ -270,9 +343,16 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 				difference.setStackSize(-changedItem.getStackSize());
 			}
 
+			/* TODO gamerforEA code replace, old code:
 			if (this.myGridCache.getInterestManager().containsKey(changedItem))
 			{
-				final Collection<ItemWatcher> list = this.myGridCache.getInterestManager().get(changedItem);
+				final Collection<ItemWatcher> list = this.myGridCache.getInterestManager().get(changedItem); */
+			final StackInterestIndex<ItemWatcher> interestIndex = this.myGridCache.getInterestIndex();
+			final Object[] indexedWatchers = interestIndex == null ? null : interestIndex.get(changedItem);
+			if (interestIndex == null ? this.myGridCache.getInterestManager().containsKey(changedItem) : indexedWatchers != null)
+			{
+				final Collection<ItemWatcher> list = indexedWatchers == null ? this.myGridCache.getInterestManager().get(changedItem) : toWatcherList(indexedWatchers);
+				// TODO gamerforEA code end
 
 				if (!list.isEmpty())
 				{
@@ -316,17 +396,152 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 			}
 		}
 
-		final NetworkMonitor<?> last = GLOBAL_DEPTH.pop();
+		// TODO gamerforEA code replace, old code:
+		// final NetworkMonitor<?> last = GLOBAL_DEPTH.pop();
+		final NetworkMonitor<?> last = GLOBAL_DEPTH.get().pop();
+		// TODO gamerforEA code end
 		this.localDepthSemaphore--;
 
 		if (last != this)
 			throw new IllegalStateException("Invalid Access to Networked Storage API detected.");
 	}
 
+	// TODO gamerforEA code start
+	private static List<ItemWatcher> toWatcherList(final Object[] watchers)
+	{
+		final List<ItemWatcher> list = new ArrayList<>(watchers.length);
+		for (final Object watcher : watchers)
+		{
+			list.add((ItemWatcher) watcher);
+		}
+		return list;
+	}
+
+	private int ticksSinceFullUpdate;
+
+	/**
+	 * @return null if disabled or not the item monitor
+	 */
+	private LevelEmitterIndex getLevelEmitterIndex()
+	{
+		return this.myChannel == StorageChannel.ITEMS ? this.myGridCache.getLevelEmitterIndex() : null;
+	}
+
+	/**
+	 * Listener notifications for the changes made through this monitor during the current tick, merged per item and
+	 * grouped by action source (listeners may depend on the source). The cached list is updated right away.
+	 */
+	private final List<PendingChanges<T>> pendingChanges = new ArrayList<>();
+	private final Map<BaseActionSource, PendingChanges<T>> pendingChangesBySource = new IdentityHashMap<>();
+
+	private void bufferChange(final T diff, final BaseActionSource src)
+	{
+		if (EventConfig.deltaNetworkStorageList)
+			this.applyChanges(true, ImmutableList.of(diff));
+		else
+			this.hasChanged = true;
+
+		PendingChanges<T> pending = this.pendingChangesBySource.get(src);
+		if (pending == null)
+		{
+			pending = new PendingChanges<>(src, (IItemList<T>) this.myChannel.createList());
+			this.pendingChangesBySource.put(src, pending);
+			this.pendingChanges.add(pending);
+		}
+
+		pending.changes.addStorage(diff);
+	}
+
+	private void flushChanges()
+	{
+		if (this.pendingChanges.isEmpty())
+			return;
+
+		// Listeners may change the storage again, these changes are published on the next tick
+		final List<PendingChanges<T>> pendingChanges = new ArrayList<>(this.pendingChanges);
+		this.pendingChanges.clear();
+		this.pendingChangesBySource.clear();
+
+		for (final PendingChanges<T> pending : pendingChanges)
+		{
+			final List<T> changes = new ArrayList<>(pending.changes.size());
+			for (final T change : pending.changes)
+			{
+				changes.add(change);
+			}
+
+			if (!changes.isEmpty())
+				this.postChange(true, changes, pending.src, true);
+		}
+	}
+
+	private static final class PendingChanges<T extends IAEStack<T>>
+	{
+		private final BaseActionSource src;
+		private final IItemList<T> changes;
+
+		private PendingChanges(final BaseActionSource src, final IItemList<T> changes)
+		{
+			this.src = src;
+			this.changes = changes;
+		}
+	}
+
+	/**
+	 * Applies the changes to the cached storage list instead of rebuilding it from the whole network.
+	 * Falls back to the full rebuild for craftable/requestable changes (pattern updates) and when the cached list
+	 * turns out to be out of sync.
+	 */
+	private void applyChanges(final boolean add, final Iterable<T> changes)
+	{
+		if (this.hasChanged)
+			return;
+
+		for (final T change : changes)
+		{
+			if (change == null)
+				continue;
+
+			if (change.isCraftable() || change.getCountRequestable() != 0)
+			{
+				this.hasChanged = true;
+				return;
+			}
+
+			final long delta = add ? change.getStackSize() : -change.getStackSize();
+			if (delta == 0)
+				continue;
+
+			final T record = this.cachedList.findPrecise(change);
+			final long newSize = (record == null ? 0 : record.getStackSize()) + delta;
+			if (newSize < 0)
+			{
+				this.hasChanged = true;
+				return;
+			}
+
+			if (record == null)
+			{
+				final T stack = change.copy();
+				stack.setStackSize(newSize);
+				this.cachedList.addStorage(stack);
+			}
+			else
+				record.setStackSize(newSize);
+		}
+	}
+	// TODO gamerforEA code end
+
 	void forceUpdate()
 	{
 		this.hasChanged = true;
 
+		// TODO gamerforEA code start
+		final LevelEmitterIndex levelEmitterIndex = this.getLevelEmitterIndex();
+		if (levelEmitterIndex != null)
+			levelEmitterIndex.markDirty();
+		// TODO gamerforEA code end
+
 		final Iterator<Entry<IMEMonitorHandlerReceiver<T>, Object>> i = this.getListeners();
 		while (i.hasNext())
 		{
@@ -348,6 +563,18 @@ public class NetworkMonitor<T extends IAEStack<T>> implements IMEMonitor<T>
 
 	void onTick()
 	{
+		// TODO gamerforEA code start
+		this.flushChanges();
+		// TODO gamerforEA code end
+
+		// TODO gamerforEA code start
+		if (EventConfig.deltaNetworkStorageList && EventConfig.networkStorageListCheckInterval > 0 && ++this.ticksSinceFullUpdate >= EventConfig.networkStorageListCheckInterval)
+		{
+			this.ticksSinceFullUpdate = 0;
+			this.hasChanged = true;
+		}
+		// TODO gamerforEA code end
+
 		if (this.sendEvent)
 		{
 			this.sendEvent = false;
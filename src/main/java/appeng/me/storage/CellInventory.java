@@ -31,6 +31,14 @@ import appeng.api.storage.data.IItemList;
 import appeng.util.Platform;
 import appeng.util.item.AEItemStack;
 import appeng.util.item.AESharedNBT;
+import appeng.util.item.HashItemList;
+import com.gamerforea.ae.CellItemCache;
+import com.gamerforea.ae.CellNBTFormat;
+import com.gamerforea.ae.CellSaveQueue;
+import com.gamerforea.ae.CellSlotTracker;
+import com.gamerforea.ae.CompactCellFormat;
+import com.gamerforea.ae.CompactCellNBTFormat;
+import com.gamerforea.ae.EventConfig;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -38,10 +46,13 @@ import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraftforge.oredict.OreDictionary;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class CellInventory implements ICellInventory
+// TODO gamerforEA code replace, old code:
+// public class CellInventory implements ICellInventory
+public class CellInventory implements ICellInventory, CellSaveQueue.Entry
+		// TODO gamerforEA code end
 {
 
 	private static final String ITEM_TYPE_TAG = "it";
@@ -55,11 +66,26 @@ public class CellInventory implements ICellInventory
 	private final ISaveProvider container;
 	private int maxItemTypes = 63;
 	private short storedItems = 0;
-	private int storedItemCount = 0;
+	// TODO gamerforEA code replace, old code:
+	// private int storedItemCount = 0;
+	private long storedItemCount = 0;
+	// TODO gamerforEA code end
 	private IItemList<IAEItemStack> cellItems;
 	private final ItemStack cellItem;
 	private IStorageCell cellType;
 
+	// TODO gamerforEA code start
+	/**
+	 * Layout of the contents in {@link #tagCompound}
+	 */
+	private final CellNBTFormat format;
+
+	/**
+	 * Changed slots for the incremental save, null if every save rewrites the whole contents
+	 */
+	private final CellSlotTracker slotTracker = EventConfig.incrementalCellSave ? new CellSlotTracker() : null;
+	// TODO gamerforEA code end
+
 	private CellInventory(final ItemStack o, final ISaveProvider container) throws AppEngException
 	{
 		if (itemSlots == null)
@@ -101,8 +127,17 @@ public class CellInventory implements ICellInventory
 
 		this.container = container;
 		this.tagCompound = Platform.openNbtData(o);
+
+		// TODO gamerforEA code start
+		if (!CompactCellFormat.isSupported(this.tagCompound))
+			throw new AppEngException("ItemStack was used as a cell, but its contents format is not supported!");
+		this.format = new CompactCellNBTFormat(this.tagCompound);
+		// TODO gamerforEA code end
 		this.storedItems = this.tagCompound.getShort(ITEM_TYPE_TAG);
-		this.storedItemCount = this.tagCompound.getInteger(ITEM_COUNT_TAG);
+		// TODO gamerforEA code replace, old code:
+		// this.storedItemCount = this.tagCompound.getInteger(ITEM_COUNT_TAG);
+		this.storedItemCount = this.tagCompound.getLong(ITEM_COUNT_TAG);
+		// TODO gamerforEA code end
 		this.cellItems = null;
 	}
 
@@ -124,19 +159,31 @@ public class CellInventory implements ICellInventory
 		return itemStack != null && isStorageCell(itemStack.getItem());
 	}
 
+	/**
+	 * Results of {@link IStorageCell#storableInStorageCell()} by item
+	 */
+	private static final Map<Item, Boolean> STORAGE_CELL_ITEMS = new ConcurrentHashMap<>();
+
 	private static boolean isStorageCell(final Item type)
 	{
-		try
-		{
-			if (type instanceof IStorageCell)
-				return !((IStorageCell) type).storableInStorageCell();
-		}
-		catch (final Throwable err)
+		if (!(type instanceof IStorageCell))
+			return false;
+
+		Boolean storageCell = STORAGE_CELL_ITEMS.get(type);
+		if (storageCell == null)
 		{
-			return true;
+			try
+			{
+				storageCell = !((IStorageCell) type).storableInStorageCell();
+			}
+			catch (final Throwable err)
+			{
+				storageCell = true;
+			}
+			STORAGE_CELL_ITEMS.put(type, storageCell);
 		}
 
-		return false;
+		return storageCell;
 	}
 
 	private static boolean isEmptyCell(final IAEItemStack itemStack)
@@ -156,10 +203,13 @@ public class CellInventory implements ICellInventory
 		if (types <= 0)
 			return true;
 
+		if (CompactCellFormat.isCompact(sharedNBT))
+			return sharedNBT.getLong(ITEM_COUNT_TAG) <= 0;
+
 		for (int x = 0; x < types; x++)
 		{
 			String countTagName = itemSlotCount == null ? ITEM_SLOT_COUNT + x : itemSlotCount[x];
-			int stackSize = sharedNBT.getInteger(countTagName);
+			long stackSize = sharedNBT.getLong(countTagName);
 			if (stackSize > 0)
 				return false;
 		}
@@ -243,14 +293,18 @@ public class CellInventory implements ICellInventory
 			if (meInventory != null && !this.isEmpty(meInventory))
 				return input;
 		} */
-		final IAEItemStack sharedItemStack = input.copy();
+		final IAEItemStack sharedItemStack = input; // The stacks written to the cell are copied below
 		if (CellInventory.isStorageCell(sharedItemStack) && !isEmptyCell(sharedItemStack))
 			return input;
 		// TODO gamerforEA code end
 
 		final IAEItemStack l = this.getCellItems().findPrecise(input);
 
-		if (l != null)
+		// TODO gamerforEA code replace, old code:
+		// if (l != null)
+		// Emptied records are not removed from the list by the incremental save, they need a free type again
+		if (l != null && l.getStackSize() > 0)
+		// TODO gamerforEA code end
 		{
 			final long remainingItemSlots = this.getRemainingItemCount();
 
@@ -266,7 +320,10 @@ public class CellInventory implements ICellInventory
 				{
 					l.setStackSize(l.getStackSize() + remainingItemSlots);
 					this.updateItemCount(remainingItemSlots);
-					this.saveChanges();
+					// TODO gamerforEA code replace, old code:
+					// this.saveChanges();
+					this.saveChanges(l);
+					// TODO gamerforEA code end
 				}
 
 				return r;
@@ -277,7 +334,10 @@ public class CellInventory implements ICellInventory
 				{
 					l.setStackSize(l.getStackSize() + input.getStackSize());
 					this.updateItemCount(input.getStackSize());
-					this.saveChanges();
+					// TODO gamerforEA code replace, old code:
+					// this.saveChanges();
+					this.saveChanges(l);
+					// TODO gamerforEA code end
 				}
 
 				return null;
@@ -286,7 +346,10 @@ public class CellInventory implements ICellInventory
 
 		if (this.canHoldNewItem()) // room for new type, and for at least one item!
 		{
-			final int remainingItemCount = (int) this.getRemainingItemCount() - this.getBytesPerType() * 8;
+			// TODO gamerforEA code replace, old code:
+			// final int remainingItemCount = (int) this.getRemainingItemCount() - this.getBytesPerType() * 8;
+			final long remainingItemCount = EventConfig.longCellCounts ? this.getRemainingItemCount() - this.getBytesPerType() * 8 : (int) this.getRemainingItemCount() - this.getBytesPerType() * 8;
+			// TODO gamerforEA code end
 
 			if (remainingItemCount > 0)
 			{
@@ -319,7 +382,10 @@ public class CellInventory implements ICellInventory
 						this.cellItems.add(toWrite);
 						this.updateItemCount(remainingItemCount);
 
-						this.saveChanges();
+						// TODO gamerforEA code replace, old code:
+						// this.saveChanges();
+						this.saveChanges(this.slotTracker != null ? this.cellItems.findPrecise(toWrite) : null);
+						// TODO gamerforEA code end
 					}
 
 					return toReturn;
@@ -330,7 +396,10 @@ public class CellInventory implements ICellInventory
 				{
 					this.updateItemCount(input.getStackSize());
 					this.cellItems.add(input);
-					this.saveChanges();
+					// TODO gamerforEA code replace, old code:
+					// this.saveChanges();
+					this.saveChanges(this.slotTracker != null ? this.cellItems.findPrecise(input) : null);
+					// TODO gamerforEA code end
 				}
 
 				return null;
@@ -346,7 +415,10 @@ public class CellInventory implements ICellInventory
 		if (request == null)
 			return null;
 
-		final long size = Math.min(Integer.MAX_VALUE, request.getStackSize());
+		// TODO gamerforEA code replace, old code:
+		// final long size = Math.min(Integer.MAX_VALUE, request.getStackSize());
+		final long size = EventConfig.longCellCounts ? request.getStackSize() : Math.min(Integer.MAX_VALUE, request.getStackSize());
+		// TODO gamerforEA code end
 
 		IAEItemStack results = null;
 
@@ -364,7 +436,10 @@ public class CellInventory implements ICellInventory
 				{
 					this.updateItemCount(-l.getStackSize());
 					l.setStackSize(0);
-					this.saveChanges();
+					// TODO gamerforEA code replace, old code:
+					// this.saveChanges();
+					this.saveChanges(l);
+					// TODO gamerforEA code end
 				}
 			}
 			else
@@ -375,7 +450,10 @@ public class CellInventory implements ICellInventory
 				{
 					l.setStackSize(l.getStackSize() - size);
 					this.updateItemCount(-size);
-					this.saveChanges();
+					// TODO gamerforEA code replace, old code:
+					// this.saveChanges();
+					this.saveChanges(l);
+					// TODO gamerforEA code end
 				}
 			}
 		}
@@ -394,73 +472,131 @@ public class CellInventory implements ICellInventory
 	private void updateItemCount(final long delta)
 	{
 		this.storedItemCount += delta;
-		this.tagCompound.setInteger(ITEM_COUNT_TAG, this.storedItemCount);
+		// TODO gamerforEA code replace, old code:
+		// this.tagCompound.setInteger(ITEM_COUNT_TAG, this.storedItemCount);
+		if (this.slotTracker == null)
+			this.format.writeItemCount(this.storedItemCount);
+		// TODO gamerforEA code end
 	}
 
-	private void saveChanges()
-	{
-		// cellItems.clean();
-		int itemCount = 0;
-
-		// add new pretty stuff...
-		int x = 0;
+	// TODO gamerforEA code start
 
-		for (final IAEItemStack v : this.cellItems)
+	/**
+	 * Rewrites only the slot of the changed record (incremental mode), deferred to the save queue of the container
+	 * if it has one
+	 */
+	private void saveChanges(final IAEItemStack record)
+	{
+		if (this.slotTracker == null)
 		{
-			itemCount += v.getStackSize();
-
-			final NBTBase c = this.tagCompound.getTag(itemSlots[x]);
-
-			if (c instanceof NBTTagCompound)
-				v.writeToNBT((NBTTagCompound) c);
-			else
-			{
-				final NBTTagCompound g = new NBTTagCompound();
-				v.writeToNBT(g);
-				this.tagCompound.setTag(itemSlots[x], g);
-			}
-
-			/*
-			 * NBTBase tagSlotCount = tagCompound.getTag( itemSlotCount[x] ); if ( tagSlotCount instanceof
-			 * NBTTagInt ) ((NBTTagInt) tagSlotCount).data = (int) v.getStackSize(); else
-			 */
-			this.tagCompound.setInteger(itemSlotCount[x], (int) v.getStackSize());
-
-			x++;
+			this.saveChanges();
+			return;
 		}
 
-		// NBTBase tagType = tagCompound.getTag( ITEM_TYPE_TAG );
-		// NBTBase tagCount = tagCompound.getTag( ITEM_COUNT_TAG );
-		final short oldStoredItems = this.storedItems;
-
-		/*
-		 * if ( tagType instanceof NBTTagShort ) ((NBTTagShort) tagType).data = storedItems = (short) cellItems.size();
-		 * else
-		 */
-		this.storedItems = (short) this.cellItems.size();
+		if (record != null)
+		{
+			this.slotTracker.update(record);
+			this.storedItems = (short) this.slotTracker.size();
+		}
 
-		if (this.cellItems.isEmpty())
-			this.tagCompound.removeTag(ITEM_TYPE_TAG);
+		final CellSaveQueue queue = this.container instanceof CellSaveQueue.Owner ? ((CellSaveQueue.Owner) this.container).getCellSaveQueue() : null;
+		if (queue == null)
+			this.writeChanges();
 		else
-			this.tagCompound.setShort(ITEM_TYPE_TAG, this.storedItems);
+			queue.add(this);
+	}
 
-		/*
-		 * if ( tagCount instanceof NBTTagInt ) ((NBTTagInt) tagCount).data = storedItemCount = itemCount; else
-		 */
-		this.storedItemCount = itemCount;
+	@Override
+	public void writeChanges()
+	{
+		if (this.slotTracker == null || !this.slotTracker.isLoaded())
+			return;
 
-		if (itemCount == 0)
-			this.tagCompound.removeTag(ITEM_COUNT_TAG);
-		else
-			this.tagCompound.setInteger(ITEM_COUNT_TAG, itemCount);
+		CellItemCache.remove(this.tagCompound);
+		this.storedItemCount = this.slotTracker.write(this.format);
+		this.storedItems = (short) this.slotTracker.size();
+
+		if (this.container != null)
+			this.container.saveChanges(this);
+	}
+	// TODO gamerforEA code end
 
-		// clean any old crusty stuff...
-		for (; x < oldStoredItems && x < this.maxItemTypes; x++)
+	private void saveChanges()
+	{
+		// TODO gamerforEA code replace, old code:
+		// // cellItems.clean();
+		// int itemCount = 0;
+		//
+		// // add new pretty stuff...
+		// int x = 0;
+		//
+		// for (final IAEItemStack v : this.cellItems)
+		// {
+		// 	itemCount += v.getStackSize();
+		//
+		// 	final NBTBase c = this.tagCompound.getTag(itemSlots[x]);
+		//
+		// 	if (c instanceof NBTTagCompound)
+		// 		v.writeToNBT((NBTTagCompound) c);
+		// 	else
+		// 	{
+		// 		final NBTTagCompound g = new NBTTagCompound();
+		// 		v.writeToNBT(g);
+		// 		this.tagCompound.setTag(itemSlots[x], g);
+		// 	}
+		//
+		// 	/*
+		// 	 * NBTBase tagSlotCount = tagCompound.getTag( itemSlotCount[x] ); if ( tagSlotCount instanceof
+		// 	 * NBTTagInt ) ((NBTTagInt) tagSlotCount).data = (int) v.getStackSize(); else
+		// 	 */
+		// 	this.tagCompound.setInteger(itemSlotCount[x], (int) v.getStackSize());
+		//
+		// 	x++;
+		// }
+		//
+		// // NBTBase tagType = tagCompound.getTag( ITEM_TYPE_TAG );
+		// // NBTBase tagCount = tagCompound.getTag( ITEM_COUNT_TAG );
+		// final short oldStoredItems = this.storedItems;
+		//
+		// /*
+		//  * if ( tagType instanceof NBTTagShort ) ((NBTTagShort) tagType).data = storedItems = (short) cellItems.size();
+		//  * else
+		//  */
+		// this.storedItems = (short) this.cellItems.size();
+		//
+		// if (this.cellItems.isEmpty())
+		// 	this.tagCompound.removeTag(ITEM_TYPE_TAG);
+		// else
+		// 	this.tagCompound.setShort(ITEM_TYPE_TAG, this.storedItems);
+		//
+		// /*
+		//  * if ( tagCount instanceof NBTTagInt ) ((NBTTagInt) tagCount).data = storedItemCount = itemCount; else
+		//  */
+		// this.storedItemCount = itemCount;
+		//
+		// if (itemCount == 0)
+		// 	this.tagCompound.removeTag(ITEM_COUNT_TAG);
+		// else
+		// 	this.tagCompound.setInteger(ITEM_COUNT_TAG, itemCount);
+		//
+		// // clean any old crusty stuff...
+		// for (; x < oldStoredItems && x < this.maxItemTypes; x++)
+		// {
+		// 	this.tagCompound.removeTag(itemSlots[x]);
+		// 	this.tagCompound.removeTag(itemSlotCount[x]);
+		// }
+		CellItemCache.remove(this.tagCompound);
+
+		final List<IAEItemStack> records = new ArrayList<>(this.cellItems.size());
+		for (final IAEItemStack v : this.cellItems)
 		{
-			this.tagCompound.removeTag(itemSlots[x]);
-			this.tagCompound.removeTag(itemSlotCount[x]);
+			records.add(v);
 		}
 
+		this.storedItemCount = this.format.write(records.toArray(new IAEItemStack[0]), records.size());
+		this.storedItems = (short) records.size();
+		// TODO gamerforEA code end
+
 		if (this.container != null)
 			this.container.saveChanges(this);
 	}
@@ -468,12 +604,16 @@ public class CellInventory implements ICellInventory
 	private void loadCellItems()
 	{
 		if (this.cellItems == null)
-			this.cellItems = AEApi.instance().storage().createItemList();
+			// TODO gamerforEA code replace, old code:
+			// this.cellItems = AEApi.instance().storage().createItemList();
+			this.cellItems = HashItemList.createItemList(EventConfig.hashItemListCells);
+			// TODO gamerforEA code end
 
 		this.cellItems.resetStatus(); // clears totals and stuff.
 
 		final int types = (int) this.getStoredItemTypes();
 
+		/* TODO gamerforEA code replace, old code:
 		for (int x = 0; x < types; x++)
 		{
 			final ItemStack t = ItemStack.loadItemStackFromNBT(this.tagCompound.getCompoundTag(itemSlots[x]));
@@ -485,8 +625,37 @@ public class CellInventory implements ICellInventory
 				if (t.stackSize > 0)
 					this.cellItems.add(AEItemStack.create(t));
 			}
+		} */
+		this.format.reset();
+		if (this.slotTracker != null)
+			this.slotTracker.reset(Math.max(this.maxItemTypes, types));
+
+		final boolean useCache = EventConfig.cellItemCacheSize > 0 && types > 0;
+		IAEItemStack[] records = useCache ? CellItemCache.get(this.tagCompound, types, this.storedItemCount) : null;
+		if (records == null)
+		{
+			records = this.format.read(types);
+			if (useCache)
+				CellItemCache.put(this.tagCompound, this.storedItemCount, records);
 		}
 
+		for (int x = 0; x < types; x++)
+		{
+			if (records[x] != null)
+			{
+				this.cellItems.add(records[x]);
+				if (this.slotTracker != null)
+					this.slotTracker.load(x, this.cellItems.findPrecise(records[x]));
+			}
+		}
+
+		if (this.slotTracker != null)
+		{
+			this.storedItems = (short) this.slotTracker.size();
+			this.storedItemCount = this.slotTracker.getItemCount();
+		}
+		// TODO gamerforEA code end
+
 		// cellItems.clean();
 	}
 
@@ -27,27 +27,39 @@ import appeng.api.networking.security.BaseActionSource;
 import appeng.api.networking.security.ISecurityGrid;
 import appeng.api.networking.security.MachineSource;
 import appeng.api.networking.security.PlayerSource;
+import appeng.api.storage.IMEInventory;
 import appeng.api.storage.IMEInventoryHandler;
 import appeng.api.storage.StorageChannel;
 import appeng.api.storage.data.IAEStack;
 import appeng.api.storage.data.IItemList;
 import appeng.me.cache.SecurityCache;
 import appeng.util.ItemSorters;
+import com.gamerforea.ae.EventConfig;
+import com.gamerforea.ae.util.ReentrancyStack;
 
 import java.util.*;
 
 public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInventoryHandler<T>
 {
 
+	/* TODO gamerforEA code replace, old code:
 	private static final ThreadLocal<LinkedList> DEPTH_MOD = new ThreadLocal<>();
-	private static final ThreadLocal<LinkedList> DEPTH_SIM = new ThreadLocal<>();
+	private static final ThreadLocal<LinkedList> DEPTH_SIM = new ThreadLocal<>(); */
+	private static final ThreadLocal<ReentrancyStack> DEPTH_MOD = ThreadLocal.withInitial(ReentrancyStack::new);
+	private static final ThreadLocal<ReentrancyStack> DEPTH_SIM = ThreadLocal.withInitial(ReentrancyStack::new);
+	// TODO gamerforEA code end
 	private static final Comparator<Integer> PRIORITY_SORTER = (o1, o2) -> ItemSorters.compareInt(o2, o1);
-	private static int currentPass = 0;
+	/* TODO gamerforEA code clear (iteration passes are tracked per thread in ReentrancyStack):
+	private static int currentPass = 0; */
 	private final StorageChannel myChannel;
 	private final SecurityCache security;
 	// final TreeMultimap<Integer, IMEInventoryHandler<T>> priorityInventory;
-	private final NavigableMap<Integer, List<IMEInventoryHandler<T>>> priorityInventory;
-	private int myPass = 0;
+	// TODO gamerforEA code replace, old code:
+	// private final NavigableMap<Integer, List<IMEInventoryHandler<T>>> priorityInventory;
+	private NavigableMap<Integer, List<IMEInventoryHandler<T>>> priorityInventory;
+	// TODO gamerforEA code end
+	/* TODO gamerforEA code clear:
+	private int myPass = 0; */
 
 	public NetworkInventoryHandler(final StorageChannel chan, final SecurityCache security)
 	{
@@ -61,22 +73,327 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 	public void addNewStorage(final IMEInventoryHandler<T> h)
 	{
 		final int priority = h.getPriority();
+		/* TODO gamerforEA code replace, old code:
 		List<IMEInventoryHandler<T>> list = this.priorityInventory.computeIfAbsent(priority, k -> new ArrayList<>());
 
-		list.add(h);
+		list.add(h); */
+		this.getWritableList(priority).add(h);
+
+		this.registrations.put(h, new Registration(priority, this.registrationCount++));
+		this.invalidateRoutes();
+		this.unlocatableStorage = null;
+		if (this.locatorValid && isLocatable(h))
+			for (final T stack : h.getAvailableItems((IItemList<T>) this.myChannel.createList()))
+			{
+				this.addHolder(stack, h);
+			}
+		// TODO gamerforEA code end
 	}
 
 	// TODO gamerforEA code start
+
+	/**
+	 * Priority the handler was added with and its position in the extraction order: handlers are appended to their
+	 * priority list, so within one priority a lower number comes first
+	 */
+	private static final class Registration
+	{
+		private final int priority;
+		private final long order;
+
+		private Registration(final int priority, final long order)
+		{
+			this.priority = priority;
+			this.order = order;
+		}
+
+		/**
+		 * Extraction order: ascending priority, then list order
+		 */
+		private int compareTo(final Registration other)
+		{
+			final int cmp = Integer.compare(this.priority, other.priority);
+			return cmp != 0 ? cmp : Long.compare(this.order, other.order);
+		}
+	}
+
+	private final Map<IMEInventoryHandler<T>, Registration> registrations = new IdentityHashMap<>();
+	private long registrationCount;
+
 	public void removeNewStorage(final IMEInventoryHandler<T> h)
 	{
-		final int priority = h.getPriority();
-		List<IMEInventoryHandler<T>> list = this.priorityInventory.get(priority);
-		if (list != null)
+		final Registration registration = this.registrations.remove(h);
+		final int priority = registration == null ? h.getPriority() : registration.priority;
+		if (this.priorityInventory.containsKey(priority))
 		{
+			final List<IMEInventoryHandler<T>> list = this.getWritableList(priority);
 			list.remove(h);
 			if (list.isEmpty())
 				this.priorityInventory.remove(priority);
 		}
+		this.invalidateRoutes();
+		this.unlocatableStorage = null;
+
+		// Holders left behind (types the cell no longer reports) are skipped and pruned on extraction
+		if (this.locatorValid && registration != null && isLocatable(h))
+			for (final T stack : h.getAvailableItems((IItemList<T>) this.myChannel.createList()))
+			{
+				this.removeHolder(stack, h);
+			}
+	}
+
+	/**
+	 * @return true if the handler was moved to another priority
+	 */
+	public boolean updateStoragePriority(final IMEInventoryHandler<T> h)
+	{
+		final Registration registration = this.registrations.get(h);
+		if (registration != null && registration.priority != h.getPriority())
+		{
+			this.removeNewStorage(h);
+			this.addNewStorage(h);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * A cell array update may arrive while this handler is iterating its priority lists on the same thread (e.g. a
+	 * storage bus reacting to a neighbor change caused by an injection). The iterated map and list are copied
+	 * instead of modified then, so the running operation keeps its snapshot.
+	 */
+	private List<IMEInventoryHandler<T>> getWritableList(final int priority)
+	{
+		final List<IMEInventoryHandler<T>> list = this.priorityInventory.get(priority);
+		if (!DEPTH_MOD.get().contains(this) && !DEPTH_SIM.get().contains(this))
+		{
+			if (list != null)
+				return list;
+			final List<IMEInventoryHandler<T>> newList = new ArrayList<>();
+			this.priorityInventory.put(priority, newList);
+			return newList;
+		}
+
+		final List<IMEInventoryHandler<T>> newList = list == null ? new ArrayList<>() : new ArrayList<>(list);
+		this.priorityInventory = new TreeMap<>(this.priorityInventory);
+		this.priorityInventory.put(priority, newList);
+		return newList;
+	}
+
+	public int getStorageCount()
+	{
+		return this.registrations.size();
+	}
+
+	public boolean hasSameStorage(final NetworkInventoryHandler<T> other)
+	{
+		if (!this.priorityInventory.keySet().equals(other.priorityInventory.keySet()))
+			return false;
+
+		for (final Map.Entry<Integer, List<IMEInventoryHandler<T>>> entry : this.priorityInventory.entrySet())
+		{
+			final List<IMEInventoryHandler<T>> list = entry.getValue();
+			final List<IMEInventoryHandler<T>> otherList = other.priorityInventory.get(entry.getKey());
+			if (list.size() != otherList.size())
+				return false;
+
+			final Set<IMEInventoryHandler<T>> set = Collections.newSetFromMap(new IdentityHashMap<>());
+			set.addAll(list);
+			if (!set.containsAll(otherList))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Injection routes by item type: for every priority bucket, the handlers that may accept the item.
+	 * Handlers with a config-driven {@link IMEInventoryHandler#canAccept} (cells and storage buses) that rejected
+	 * the item are left out, the other handlers are always kept and checked on every injection.
+	 */
+	private final Map<T, List<List<IMEInventoryHandler<T>>>> routes = new HashMap<>();
+
+	public void invalidateRoutes()
+	{
+		this.routes.clear();
+	}
+
+	private Collection<? extends Collection<IMEInventoryHandler<T>>> getInjectionRoute(final T input)
+	{
+		final int maxSize = EventConfig.injectionRoutingCacheSize;
+		if (maxSize <= 0 || input == null)
+			return this.priorityInventory.values();
+
+		List<List<IMEInventoryHandler<T>>> route = this.routes.get(input);
+		if (route == null)
+		{
+			route = new ArrayList<>(this.priorityInventory.size());
+			for (final List<IMEInventoryHandler<T>> invList : this.priorityInventory.values())
+			{
+				final List<IMEInventoryHandler<T>> candidates = new ArrayList<>(invList.size());
+				for (final IMEInventoryHandler<T> inv : invList)
+				{
+					if (!isCanAcceptCacheable(inv) || inv.canAccept(input))
+						candidates.add(inv);
+				}
+
+				if (!candidates.isEmpty())
+					route.add(candidates);
+			}
+
+			if (this.routes.size() >= maxSize)
+				this.routes.clear();
+			this.routes.put(input.copy(), route);
+		}
+		return route;
+	}
+
+	/**
+	 * {@link MEInventoryHandler#canAccept} only depends on the access mode and the partition list (both are changed
+	 * with {@link appeng.api.networking.events.MENetworkCellArrayUpdate}), as long as the wrapped inventory always
+	 * accepts. Drive cells are a {@link DriveWatcher} around the {@link CellInventoryHandler} of the cell, whose
+	 * partition comes from the cell item and can only change by swapping the cell.
+	 */
+	private static boolean isCanAcceptCacheable(final IMEInventoryHandler<?> inv)
+	{
+		if (inv instanceof MEInventoryHandler)
+		{
+			final IMEInventory<?> internal = ((MEInventoryHandler<?>) inv).getInternal();
+			if (inv instanceof DriveWatcher && internal instanceof CellInventoryHandler)
+				return isCanAcceptCacheable((CellInventoryHandler) internal);
+			return internal instanceof MEPassThrough || internal instanceof MEMonitorIInventory;
+		}
+		return false;
+	}
+
+	/**
+	 * Extraction locator: item type -> drive cells that hold it. The other handlers (storage buses, chests,
+	 * the crafting cache, external handlers) may change without going through this handler, so they are
+	 * always asked. Holders are added on injection and removed when a modulated extraction from them comes up short
+	 * and the cell has none of the item left (a cell may extract less than requested, e.g. int-clamped counts).
+	 */
+	private final Map<T, Set<IMEInventoryHandler<T>>> holders = new HashMap<>();
+	private boolean locatorValid;
+	private List<IMEInventoryHandler<T>> unlocatableStorage;
+
+	/**
+	 * Cells in a drive can only be changed through the drive, which belongs to exactly one network
+	 */
+	private static boolean isLocatable(final IMEInventoryHandler<?> inv)
+	{
+		return inv instanceof DriveWatcher && ((DriveWatcher<?>) inv).getInternal() instanceof CellInventoryHandler;
+	}
+
+	private void addHolder(final T stack, final IMEInventoryHandler<T> inv)
+	{
+		Set<IMEInventoryHandler<T>> set = this.holders.get(stack);
+		if (set == null)
+		{
+			set = Collections.newSetFromMap(new IdentityHashMap<>(4));
+			this.holders.put(stack.copy(), set);
+		}
+		set.add(inv);
+	}
+
+	private void removeHolder(final T stack, final IMEInventoryHandler<T> inv)
+	{
+		final Set<IMEInventoryHandler<T>> set = this.holders.get(stack);
+		if (set != null && set.remove(inv) && set.isEmpty())
+			this.holders.remove(stack);
+	}
+
+	private void buildLocator()
+	{
+		this.holders.clear();
+		for (final IMEInventoryHandler<T> inv : this.registrations.keySet())
+		{
+			if (isLocatable(inv))
+				for (final T stack : inv.getAvailableItems((IItemList<T>) this.myChannel.createList()))
+				{
+					this.addHolder(stack, inv);
+				}
+		}
+		this.locatorValid = true;
+	}
+
+	/**
+	 * Builds the locator and the unlocatable handler list on {@link Actionable#MODULATE} only, so that a simulation
+	 * never changes the state of this handler
+	 *
+	 * @return handlers that may hold the item in the extraction order (ascending priority, then list order) or null
+	 * if the locator is not built yet and the mode is {@link Actionable#SIMULATE}
+	 */
+	private List<IMEInventoryHandler<T>> getExtractionCandidates(final T request, final Actionable mode)
+	{
+		final boolean modulate = mode == Actionable.MODULATE;
+		if (!this.locatorValid)
+		{
+			if (!modulate)
+				return null;
+			this.buildLocator();
+		}
+
+		List<IMEInventoryHandler<T>> unlocatable = this.unlocatableStorage;
+		if (unlocatable == null)
+		{
+			if (!modulate)
+				return null;
+
+			unlocatable = new ArrayList<>();
+			for (final List<IMEInventoryHandler<T>> invList : this.priorityInventory.descendingMap().values())
+			{
+				for (final IMEInventoryHandler<T> inv : invList)
+				{
+					if (!isLocatable(inv))
+						unlocatable.add(inv);
+				}
+			}
+			this.unlocatableStorage = unlocatable;
+		}
+
+		final Set<IMEInventoryHandler<T>> set = this.holders.get(request);
+		if (set == null || set.isEmpty())
+			return unlocatable;
+
+		final List<IMEInventoryHandler<T>> located = new ArrayList<>(set.size());
+		for (final Iterator<IMEInventoryHandler<T>> it = set.iterator(); it.hasNext(); )
+		{
+			final IMEInventoryHandler<T> inv = it.next();
+			if (this.registrations.containsKey(inv))
+				located.add(inv);
+			else if (modulate)
+				it.remove();
+		}
+		if (located.isEmpty())
+		{
+			if (modulate)
+				this.holders.remove(request);
+			return unlocatable;
+		}
+		located.sort((a, b) -> this.registrations.get(a).compareTo(this.registrations.get(b)));
+
+		final List<IMEInventoryHandler<T>> candidates = new ArrayList<>(unlocatable.size() + located.size());
+		int i = 0;
+		for (final IMEInventoryHandler<T> inv : unlocatable)
+		{
+			final Registration registration = this.registrations.get(inv);
+			while (i < located.size() && this.registrations.get(located.get(i)).compareTo(registration) < 0)
+			{
+				candidates.add(located.get(i++));
+			}
+			candidates.add(inv);
+		}
+		candidates.addAll(located.subList(i, located.size()));
+		return candidates;
+	}
+
+	private T injectInto(final IMEInventoryHandler<T> inv, final T input, final Actionable type, final BaseActionSource src)
+	{
+		final long size = input.getStackSize();
+		final T leftover = inv.injectItems(input, type, src);
+		if (type == Actionable.MODULATE && this.locatorValid && isLocatable(inv) && (leftover == null || leftover.getStackSize() != size))
+			this.addHolder(input, inv);
+		return leftover;
 	}
 	// TODO gamerforEA code end
 
@@ -92,7 +409,10 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 			return input;
 		}
 
-		for (final List<IMEInventoryHandler<T>> invList : this.priorityInventory.values())
+		/* TODO gamerforEA code replace, old code:
+		for (final List<IMEInventoryHandler<T>> invList : this.priorityInventory.values()) */
+		for (final Collection<IMEInventoryHandler<T>> invList : this.getInjectionRoute(input))
+		// TODO gamerforEA code end
 		{
 			Iterator<IMEInventoryHandler<T>> ii = invList.iterator();
 			while (ii.hasNext() && input != null)
@@ -100,7 +420,10 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 				final IMEInventoryHandler<T> inv = ii.next();
 
 				if (inv.validForPass(1) && inv.canAccept(input) && (inv.isPrioritized(input) || inv.extractItems(input, Actionable.SIMULATE, src) != null))
-					input = inv.injectItems(input, type, src);
+					// TODO gamerforEA code replace, old code:
+					// input = inv.injectItems(input, type, src);
+					input = this.injectInto(inv, input, type, src);
+					// TODO gamerforEA code end
 			}
 
 			// We need to ignore prioritized inventories in the second pass. If they were not able to store everything
@@ -113,7 +436,10 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 				final IMEInventoryHandler<T> inv = ii.next();
 
 				if (inv.validForPass(2) && inv.canAccept(input) && !inv.isPrioritized(input))
-					input = inv.injectItems(input, type, src);
+					// TODO gamerforEA code replace, old code:
+					// input = inv.injectItems(input, type, src);
+					input = this.injectInto(inv, input, type, src);
+					// TODO gamerforEA code end
 			}
 		}
 
@@ -124,7 +450,10 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 
 	private boolean diveList(final NetworkInventoryHandler<T> networkInventoryHandler, final Actionable type)
 	{
-		final LinkedList cDepth = this.getDepth(type);
+		// TODO gamerforEA code replace, old code:
+		// final LinkedList cDepth = this.getDepth(type);
+		final ReentrancyStack cDepth = this.getDepth(type);
+		// TODO gamerforEA code end
 		if (cDepth.contains(networkInventoryHandler))
 			return true;
 
@@ -165,6 +494,7 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 			throw new IllegalStateException("Invalid Access to Networked Storage API detected.");
 	}
 
+	/* TODO gamerforEA code replace, old code:
 	private LinkedList getDepth(final Actionable type)
 	{
 		final ThreadLocal<LinkedList> depth = type == Actionable.MODULATE ? DEPTH_MOD : DEPTH_SIM;
@@ -175,7 +505,12 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 			depth.set(s = new LinkedList());
 
 		return s;
+	} */
+	private ReentrancyStack getDepth(final Actionable type)
+	{
+		return (type == Actionable.MODULATE ? DEPTH_MOD : DEPTH_SIM).get();
 	}
+	// TODO gamerforEA code end
 
 	@Override
 	public T extractItems(T request, final Actionable mode, final BaseActionSource src)
@@ -196,6 +531,34 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 		output.setStackSize(0);
 		final long req = request.getStackSize();
 
+		// TODO gamerforEA code start
+		// The locator is only kept up to date by the incremental network storage, a rebuilt handler would scan every cell again
+		final List<IMEInventoryHandler<T>> candidates = EventConfig.extractionLocatorIndex && EventConfig.incrementalNetworkStorage ? this.getExtractionCandidates(request, mode) : null;
+		if (candidates != null)
+		{
+			for (final IMEInventoryHandler<T> inv : candidates)
+			{
+				if (output.getStackSize() >= req)
+					break;
+
+				final long remaining = req - output.getStackSize();
+				request.setStackSize(remaining);
+				final T extracted = inv.extractItems(request, mode, src);
+				output.add(extracted);
+
+				if (mode == Actionable.MODULATE && isLocatable(inv) && (extracted == null || extracted.getStackSize() < remaining))
+				{
+					request.setStackSize(1);
+					if (inv.extractItems(request, Actionable.SIMULATE, src) == null)
+						this.removeHolder(request, inv);
+				}
+			}
+
+			this.surface(this, mode);
+			return output.getStackSize() <= 0 ? null : output;
+		}
+		// TODO gamerforEA code end
+
 		while (i.hasNext())
 		{
 			final List<IMEInventoryHandler<T>> invList = i.next();
@@ -240,6 +603,7 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 
 	private boolean diveIteration(final NetworkInventoryHandler<T> networkInventoryHandler, final Actionable type)
 	{
+		/* TODO gamerforEA code replace, old code:
 		final LinkedList cDepth = this.getDepth(type);
 		if (cDepth.isEmpty())
 		{
@@ -249,7 +613,11 @@ public class NetworkInventoryHandler<T extends IAEStack<T>> implements IMEInvent
 		else if (currentPass == this.myPass)
 			return true;
 		else
-			this.myPass = currentPass;
+			this.myPass = currentPass; */
+		final ReentrancyStack cDepth = this.getDepth(type);
+		if (!cDepth.visit(networkInventoryHandler))
+			return true;
+		// TODO gamerforEA code end
 
 		cDepth.push(this);
 		return false;
@@ -38,6 +38,7 @@ import appeng.core.AEConfig;
 import appeng.core.sync.GuiBridge;
 import appeng.helpers.IPriorityHost;
 import appeng.me.GridAccessException;
+import appeng.me.cache.GridStorageCache;
 import appeng.me.storage.MEInventoryHandler;
 import appeng.parts.PartBasicState;
 import appeng.tile.inventory.AppEngInternalAEInventory;
@@ -122,7 +123,10 @@ public class PartFormationPlane extends PartUpgradeable
 
 		try
 		{
-			this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+			// TODO gamerforEA code end
 		}
 		catch (final GridAccessException e)
 		{
@@ -31,6 +31,7 @@ import appeng.api.networking.security.BaseActionSource;
 import appeng.api.networking.storage.IBaseMonitor;
 import appeng.api.networking.storage.IStackWatcher;
 import appeng.api.networking.storage.IStackWatcherHost;
+import appeng.api.networking.storage.IStorageGrid;
 import appeng.api.parts.IPartCollisionHelper;
 import appeng.api.parts.IPartRenderHelper;
 import appeng.api.storage.IMEMonitor;
@@ -45,9 +46,11 @@ import appeng.client.texture.CableBusTextures;
 import appeng.core.sync.GuiBridge;
 import appeng.helpers.Reflected;
 import appeng.me.GridAccessException;
+import appeng.me.cache.GridStorageCache;
 import appeng.tile.inventory.AppEngInternalAEInventory;
 import appeng.tile.inventory.InvOperation;
 import appeng.util.Platform;
+import com.gamerforea.ae.LevelEmitterIndex;
 import com.gamerforea.ae.ModUtils;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
@@ -67,9 +70,12 @@ import net.minecraftforge.common.util.ForgeDirection;
 import java.util.Collection;
 import java.util.Random;
 
+// TODO gamerforEA code replace, old code:
+// public class PartLevelEmitter extends PartUpgradeable implements IEnergyWatcherHost, IStackWatcherHost, ICraftingWatcherHost, IMEMonitorHandlerReceiver<IAEItemStack>, ICraftingProvider
 public class PartLevelEmitter extends PartUpgradeable
 		implements IEnergyWatcherHost, IStackWatcherHost, ICraftingWatcherHost, IMEMonitorHandlerReceiver<IAEItemStack>,
-		ICraftingProvider
+		ICraftingProvider, LevelEmitterIndex.Host
+		// TODO gamerforEA code end
 {
 
 	private static final int FLAG_ON = 4;
@@ -109,6 +115,10 @@ public class PartLevelEmitter extends PartUpgradeable
 		this.reportingValue = v;
 		if (this.getConfigManager().getSetting(Settings.LEVEL_TYPE) == LevelType.ENERGY_LEVEL)
 			this.configureWatchers();
+		// TODO gamerforEA code start
+		else if (this.levelEmitterIndex != null)
+			this.levelEmitterIndex.setThreshold(this, v);
+		// TODO gamerforEA code end
 		else
 			this.updateState();
 	}
@@ -194,6 +204,14 @@ public class PartLevelEmitter extends PartUpgradeable
 	{
 		final IAEItemStack myStack = this.config.getAEStackInSlot(0);
 
+		// TODO gamerforEA code start
+		if (this.levelEmitterIndex != null)
+		{
+			this.levelEmitterIndex.unregister(this);
+			this.levelEmitterIndex = null;
+		}
+		// TODO gamerforEA code end
+
 		if (this.myWatcher != null)
 			this.myWatcher.clear();
 
@@ -244,6 +262,19 @@ public class PartLevelEmitter extends PartUpgradeable
 
 		try
 		{
+			// TODO gamerforEA code start
+			final IStorageGrid storage = this.getProxy().getStorage();
+			final LevelEmitterIndex levelEmitterIndex = storage instanceof GridStorageCache ? ((GridStorageCache) storage).getLevelEmitterIndex() : null;
+			if (levelEmitterIndex != null)
+			{
+				storage.getItemInventory().removeListener(this);
+				final FuzzyMode fzMode = myStack != null && this.getInstalledUpgrades(Upgrades.FUZZY) > 0 ? (FuzzyMode) this.getConfigManager().getSetting(Settings.FUZZY_MODE) : null;
+				this.levelEmitterIndex = levelEmitterIndex;
+				levelEmitterIndex.register(this, myStack, fzMode, this.reportingValue, storage.getItemInventory());
+				return;
+			}
+			// TODO gamerforEA code end
+
 			if (this.getInstalledUpgrades(Upgrades.FUZZY) > 0 || myStack == null)
 				this.getProxy().getStorage().getItemInventory().addListener(this, this.getProxy().getGrid());
 			else
@@ -317,6 +348,15 @@ public class PartLevelEmitter extends PartUpgradeable
 	}
 
 	// TODO gamerforEA code start
+	private LevelEmitterIndex levelEmitterIndex;
+
+	@Override
+	public void onLevelChange(long amount)
+	{
+		this.lastReportedValue = amount;
+		this.updateState();
+	}
+
 	private final boolean canSendDirtyFlag = ModUtils.canSendDirtyFlagForStackWatcherHost(this, PartLevelEmitter.class);
 
 	@Override
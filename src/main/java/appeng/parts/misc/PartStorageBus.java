@@ -48,6 +48,7 @@ import appeng.helpers.IPriorityHost;
 import appeng.helpers.Reflected;
 import appeng.integration.IntegrationType;
 import appeng.me.GridAccessException;
+import appeng.me.cache.GridStorageCache;
 import appeng.me.storage.MEInventoryHandler;
 import appeng.me.storage.MEMonitorIInventory;
 import appeng.parts.automation.PartUpgradeable;
@@ -116,7 +117,10 @@ public class PartStorageBus extends PartUpgradeable
 			this.wasActive = currentActive;
 			try
 			{
-				this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				// TODO gamerforEA code replace, old code:
+				// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+				// TODO gamerforEA code end
 				this.getHost().markForUpdate();
 			}
 			catch (final GridAccessException e)
@@ -459,7 +463,10 @@ public class PartStorageBus extends PartUpgradeable
 		try
 		{
 			// force grid to update handlers...
-			this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+			// TODO gamerforEA code end
 		}
 		catch (final GridAccessException e)
 		{
@@ -20,6 +20,7 @@ package appeng.server;
 
 import appeng.server.subcommands.ChunkLogger;
 import appeng.server.subcommands.Supporters;
+import com.gamerforea.ae.subcommands.CallQueueSubCommand;
 import com.gamerforea.ae.subcommands.GridPerfSubCommand;
 
 public enum Commands
@@ -28,7 +29,8 @@ public enum Commands
 	Supporters(0, new Supporters()),
 
 	// TODO gamerforEA code start
-	GridPerf(3, new GridPerfSubCommand())
+	GridPerf(3, new GridPerfSubCommand()),
+	CallQueue(3, new CallQueueSubCommand())
 	// TODO gamerforEA code end
 	;
 
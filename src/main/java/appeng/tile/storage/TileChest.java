@@ -39,6 +39,7 @@ import appeng.api.util.AEColor;
 import appeng.api.util.IConfigManager;
 import appeng.helpers.IPriorityHost;
 import appeng.me.GridAccessException;
+import appeng.me.cache.GridStorageCache;
 import appeng.me.storage.MEInventoryHandler;
 import appeng.tile.TileEvent;
 import appeng.tile.events.TileEventType;
@@ -49,6 +50,8 @@ import appeng.util.ConfigManager;
 import appeng.util.IConfigManagerHost;
 import appeng.util.Platform;
 import appeng.util.item.AEFluidStack;
+import com.gamerforea.ae.CellSaveQueue;
+import com.gamerforea.ae.CellSlotInventory;
 import com.gamerforea.ae.EventConfig;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.entity.player.EntityPlayer;
@@ -56,6 +59,7 @@ import net.minecraft.inventory.IInventory;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
 import net.minecraftforge.common.util.ForgeDirection;
 import net.minecraftforge.fluids.Fluid;
 import net.minecraftforge.fluids.FluidStack;
@@ -67,14 +71,22 @@ import java.util.Collections;
 import java.util.List;
 
 public class TileChest extends AENetworkPowerTile
-		implements IMEChest, IFluidHandler, ITerminalHost, IPriorityHost, IConfigManagerHost, IColorableTile
+		// TODO gamerforEA code replace, old code:
+		// implements IMEChest, IFluidHandler, ITerminalHost, IPriorityHost, IConfigManagerHost, IColorableTile
+		implements IMEChest, IFluidHandler, ITerminalHost, IPriorityHost, IConfigManagerHost, IColorableTile,
+		CellSaveQueue.Owner
+		// TODO gamerforEA code end
 {
 
 	private static final ChestNoHandler NO_HANDLER = new ChestNoHandler();
 	private static final int[] SIDES = { 0 };
 	private static final int[] FRONT = { 1 };
 	private static final int[] NO_SLOTS = {};
-	private final AppEngInternalInventory inv = new AppEngInternalInventory(this, 2);
+	// TODO gamerforEA code replace, old code:
+	// private final AppEngInternalInventory inv = new AppEngInternalInventory(this, 2);
+	private final CellSaveQueue cellSaveQueue = new CellSaveQueue(this);
+	private final AppEngInternalInventory inv = new CellSlotInventory(this, 2, this.cellSaveQueue);
+	// TODO gamerforEA code end
 	private final BaseActionSource mySrc = new MachineSource(this);
 	private final IConfigManager config = new ConfigManager(this);
 	private ItemStack storageType;
@@ -88,6 +100,21 @@ public class TileChest extends AENetworkPowerTile
 	private MEMonitorHandler itemCell;
 	private MEMonitorHandler fluidCell;
 
+	// TODO gamerforEA code start
+	@Override
+	public CellSaveQueue getCellSaveQueue()
+	{
+		return this.cellSaveQueue;
+	}
+
+	@Override
+	public void getDrops(final World w, final int x, final int y, final int z, final List<ItemStack> drops)
+	{
+		this.cellSaveQueue.flush();
+		super.getDrops(w, x, y, z, drops);
+	}
+	// TODO gamerforEA code end
+
 	public TileChest()
 	{
 		this.setInternalMaxPower(PowerMultiplier.CONFIG.multiply(40));
@@ -136,7 +163,10 @@ public class TileChest extends AENetworkPowerTile
 			this.wasActive = currentActive;
 			try
 			{
-				this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				// TODO gamerforEA code replace, old code:
+				// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+				// TODO gamerforEA code end
 			}
 			catch (final GridAccessException e)
 			{
@@ -158,6 +188,10 @@ public class TileChest extends AENetworkPowerTile
 	{
 		if (!this.isCached)
 		{
+			// TODO gamerforEA code start
+			this.cellSaveQueue.flush();
+			// TODO gamerforEA code end
+
 			this.itemCell = null;
 			this.fluidCell = null;
 
@@ -393,6 +427,10 @@ public class TileChest extends AENetworkPowerTile
 	@TileEvent(TileEventType.WORLD_NBT_WRITE)
 	public void writeToNBT_TileChest(final NBTTagCompound data)
 	{
+		// TODO gamerforEA code start
+		this.cellSaveQueue.flush();
+		// TODO gamerforEA code end
+
 		this.config.writeToNBT(data);
 		data.setInteger("priority", this.priority);
 		data.setByte("paintedColor", (byte) this.paintedColor.ordinal());
@@ -440,13 +478,20 @@ public class TileChest extends AENetworkPowerTile
 	{
 		if (slot == 1)
 		{
+			// TODO gamerforEA code start
+			this.cellSaveQueue.flush();
+			// TODO gamerforEA code end
+
 			this.itemCell = null;
 			this.fluidCell = null;
 			this.isCached = false; // recalculate the storage cell.
 
 			try
 			{
-				this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				// TODO gamerforEA code replace, old code:
+				// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+				// TODO gamerforEA code end
 
 				final IStorageGrid gs = this.getProxy().getStorage();
 				Platform.postChanges(gs, removed, added, this.mySrc);
@@ -583,7 +628,10 @@ public class TileChest extends AENetworkPowerTile
 
 		try
 		{
-			this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+			// TODO gamerforEA code end
 		}
 		catch (final GridAccessException e)
 		{
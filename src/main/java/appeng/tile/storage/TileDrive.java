@@ -37,6 +37,7 @@ import appeng.api.util.AECableType;
 import appeng.api.util.DimensionalCoord;
 import appeng.helpers.IPriorityHost;
 import appeng.me.GridAccessException;
+import appeng.me.cache.GridStorageCache;
 import appeng.me.storage.DriveWatcher;
 import appeng.me.storage.MEInventoryHandler;
 import appeng.tile.TileEvent;
@@ -45,11 +46,14 @@ import appeng.tile.grid.AENetworkInvTile;
 import appeng.tile.inventory.AppEngInternalInventory;
 import appeng.tile.inventory.InvOperation;
 import appeng.util.Platform;
+import com.gamerforea.ae.CellSaveQueue;
+import com.gamerforea.ae.CellSlotInventory;
 import com.gamerforea.ae.EventConfig;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
 import net.minecraftforge.common.util.ForgeDirection;
 import org.apache.commons.lang3.ArrayUtils;
 
@@ -57,10 +61,17 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
-public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPriorityHost
+// TODO gamerforEA code replace, old code:
+// public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPriorityHost
+public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPriorityHost, CellSaveQueue.Owner
+		// TODO gamerforEA code end
 {
 	private final int[] sides = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
-	private final AppEngInternalInventory inv = new AppEngInternalInventory(this, 10);
+	// TODO gamerforEA code replace, old code:
+	// private final AppEngInternalInventory inv = new AppEngInternalInventory(this, 10);
+	private final CellSaveQueue cellSaveQueue = new CellSaveQueue(this);
+	private final AppEngInternalInventory inv = new CellSlotInventory(this, 10, this.cellSaveQueue);
+	// TODO gamerforEA code end
 	private final ICellHandler[] handlersBySlot = new ICellHandler[10];
 	private final DriveWatcher<IAEItemStack>[] invBySlot = new DriveWatcher[10];
 	private final BaseActionSource mySrc;
@@ -73,6 +84,19 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 	private boolean wasActive = false;
 
 	// TODO gamerforEA code start
+	@Override
+	public CellSaveQueue getCellSaveQueue()
+	{
+		return this.cellSaveQueue;
+	}
+
+	@Override
+	public void getDrops(final World w, final int x, final int y, final int z, final List<ItemStack> drops)
+	{
+		this.cellSaveQueue.flush();
+		super.getDrops(w, x, y, z, drops);
+	}
+
 	@Override
 	public boolean canInsertItem(int slotIndex, ItemStack insertingItem, int side)
 	{
@@ -181,6 +205,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 	@TileEvent(TileEventType.WORLD_NBT_WRITE)
 	public void writeToNBT_TileDrive(final NBTTagCompound data)
 	{
+		// TODO gamerforEA code start
+		this.cellSaveQueue.flush();
+		// TODO gamerforEA code end
+
 		data.setInteger("priority", this.priority);
 	}
 
@@ -203,7 +231,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 			this.wasActive = currentActive;
 			try
 			{
-				this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				// TODO gamerforEA code replace, old code:
+				// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+				GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+				// TODO gamerforEA code end
 			}
 			catch (final GridAccessException e)
 			{
@@ -254,6 +285,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 	@Override
 	public void onChangeInventory(final IInventory inv, final int slot, final InvOperation mc, final ItemStack removed, final ItemStack added)
 	{
+		// TODO gamerforEA code start
+		this.cellSaveQueue.flush();
+		// TODO gamerforEA code end
+
 		if (this.isCached)
 		{
 			this.isCached = false; // recalculate the storage cell.
@@ -262,7 +297,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 
 		try
 		{
-			this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+			// TODO gamerforEA code end
 
 			final IStorageGrid gs = this.getProxy().getStorage();
 			Platform.postChanges(gs, removed, added, this.mySrc);
@@ -289,6 +327,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 	{
 		if (!this.isCached)
 		{
+			// TODO gamerforEA code start
+			this.cellSaveQueue.flush();
+			// TODO gamerforEA code end
+
 			this.items = new LinkedList<>();
 			this.fluids = new LinkedList<>();
 
@@ -376,7 +418,10 @@ public class TileDrive extends AENetworkInvTile implements IChestOrDrive, IPrior
 
 		try
 		{
-			this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			// TODO gamerforEA code replace, old code:
+			// this.getProxy().getGrid().postEvent(new MENetworkCellArrayUpdate());
+			GridStorageCache.postCellArrayUpdate(this.getProxy().getGrid(), this);
+			// TODO gamerforEA code end
 		}
 		catch (final GridAccessException e)
 		{
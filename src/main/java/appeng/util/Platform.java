@@ -58,6 +58,7 @@ import appeng.util.item.OreHelper;
 import appeng.util.item.OreReference;
 import appeng.util.prioitylist.IPartitionList;
 import buildcraft.api.tools.IToolWrench;
+import com.gamerforea.ae.ParallelGridUpdater;
 import com.gamerforea.eventhelper.EventHelper;
 import com.gamerforea.eventhelper.util.EventUtils;
 import cpw.mods.fml.common.FMLCommonHandler;
@@ -340,6 +341,11 @@ public class Platform
 	 */
 	public static boolean isClient()
 	{
+		// TODO gamerforEA code start
+		if (ParallelGridUpdater.isWorkerThread())
+			return false;
+		// TODO gamerforEA code end
+
 		return FMLCommonHandler.instance().getEffectiveSide().isClient();
 	}
 
@@ -686,6 +692,11 @@ public class Platform
 	 */
 	public static boolean isServer()
 	{
+		// TODO gamerforEA code start
+		if (ParallelGridUpdater.isWorkerThread())
+			return true;
+		// TODO gamerforEA code end
+
 		return FMLCommonHandler.instance().getEffectiveSide().isServer();
 	}
 
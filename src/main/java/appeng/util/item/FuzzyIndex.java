@@ -0,0 +1,390 @@
+package appeng.util.item;
+
+import appeng.api.config.FuzzyMode;
+import appeng.api.storage.data.IAEItemStack;
+import net.minecraft.item.Item;
+import net.minecraftforge.oredict.OreDictionary;
+
+import java.util.*;
+
+/**
+ * Secondary index of an item list for fuzzy queries: records by item and by damage value, plus cached results of
+ * ore dictionary queries. Answers the same records as the {@code getLow()..getHigh()} range of {@link ItemList}
+ * (in no particular order) without range scans.
+ * <p>
+ * The records of an item and of a damage value are kept in mutable sets (constant time add and remove, also with
+ * thousands of damage values of one item). Queries return read-only snapshots taken on the first read after a change,
+ * the damage ranges of damageable items and the ore dictionary results are cached until one of their items changes.
+ */
+final class FuzzyIndex
+{
+	private final Map<Item, ItemBucket> items = new IdentityHashMap<>();
+	private final Map<OreReference, OreResult> oreResults = new IdentityHashMap<>();
+
+	synchronized void add(final IAEItemStack stack)
+	{
+		final AEItemDef def = ((AEItemStack) stack).getDefinition();
+		ItemBucket bucket = this.items.get(def.getItem());
+		if (bucket == null)
+			this.items.put(def.getItem(), bucket = new ItemBucket());
+		bucket.add(stack, def.getDamageValue());
+	}
+
+	synchronized void remove(final IAEItemStack stack)
+	{
+		final AEItemDef def = ((AEItemStack) stack).getDefinition();
+		final ItemBucket bucket = this.items.get(def.getItem());
+		if (bucket != null && bucket.remove(stack, def.getDamageValue()) && bucket.records.size == 0)
+			this.items.remove(def.getItem());
+	}
+
+	synchronized void clear()
+	{
+		this.items.clear();
+		this.oreResults.clear();
+	}
+
+	synchronized Collection<IAEItemStack> findFuzzy(final AEItemStack filter, final FuzzyMode fuzzy)
+	{
+		if (!filter.isOre())
+			return this.findFuzzyDamage(filter, fuzzy, false);
+
+		final OreReference or = filter.getDefinition().getIsOre();
+		OreResult result = this.oreResults.get(or);
+		if (result == null || result.fuzzy != fuzzy || !this.isValid(result))
+		{
+			final List<IAEItemStack> equivalents = or.getAEEquivalents();
+			final ItemBucket[] buckets = new ItemBucket[equivalents.size()];
+			final int[] versions = new int[buckets.length];
+			final List<IAEItemStack> output = new ArrayList<>();
+			for (int i = 0; i < buckets.length; i++)
+			{
+				final IAEItemStack is = equivalents.get(i);
+				final ItemBucket bucket = this.items.get(is.getItem());
+				buckets[i] = bucket;
+				versions[i] = bucket == null ? 0 : bucket.version;
+				output.addAll(this.findFuzzyDamage((AEItemStack) is, fuzzy, is.getItemDamage() == OreDictionary.WILDCARD_VALUE));
+			}
+			this.oreResults.put(or, result = new OreResult(equivalents, buckets, versions, fuzzy, Collections.unmodifiableList(output)));
+		}
+		return result.records;
+	}
+
+	private boolean isValid(final OreResult result)
+	{
+		for (int i = 0; i < result.buckets.length; i++)
+		{
+			final ItemBucket bucket = result.buckets[i];
+			if (this.items.get(result.equivalents.get(i).getItem()) != bucket || bucket != null && bucket.version != result.versions[i])
+				return false;
+		}
+		return true;
+	}
+
+	private Collection<IAEItemStack> findFuzzyDamage(final AEItemStack filter, final FuzzyMode fuzzy, final boolean ignoreMeta)
+	{
+		final AEItemDef def = filter.getDefinition();
+		final ItemBucket bucket = this.items.get(def.getItem());
+		if (bucket == null)
+			return Collections.emptyList();
+
+		if (ignoreMeta)
+			return bucket.records.snapshot();
+
+		if (!def.getItem().isDamageable())
+		{
+			final RecordSet damageRecords = bucket.byDamage.get(def.getDamageValue());
+			return damageRecords == null ? Collections.emptyList() : damageRecords.snapshot();
+		}
+
+		// Same bounds as AEItemStack.getLow()/getHigh() for damageable items
+		final int low;
+		final int high;
+		if (fuzzy == FuzzyMode.IGNORE_ALL)
+		{
+			low = 0;
+			high = def.getMaxDamage() + 1;
+		}
+		else if (fuzzy == FuzzyMode.PERCENT_99)
+		{
+			low = def.getDamageValue() == 0 ? 0 : 1;
+			high = def.getDamageValue() == 0 ? 0 : def.getMaxDamage() + 1;
+		}
+		else
+		{
+			final int breakpoint = fuzzy.calculateBreakPoint(def.getMaxDamage());
+			low = breakpoint <= def.getDisplayDamage() ? breakpoint : 0;
+			high = def.getDisplayDamage() < breakpoint ? breakpoint - 1 : def.getMaxDamage() + 1;
+		}
+
+		final List<IAEItemStack> cached = bucket.getRange(low, high);
+		if (cached != null)
+			return cached;
+
+		final RecordSet records = bucket.records;
+		int count = 0;
+		for (int i = 0; i < records.size; i++)
+		{
+			if (isInRange(records.array[i], low, high))
+				count++;
+		}
+
+		final List<IAEItemStack> result;
+		if (count == records.size)
+			result = records.snapshot();
+		else if (count == 0)
+			result = Collections.emptyList();
+		else
+		{
+			final IAEItemStack[] output = new IAEItemStack[count];
+			count = 0;
+			for (int i = 0; i < records.size; i++)
+			{
+				if (isInRange(records.array[i], low, high))
+					output[count++] = records.array[i];
+			}
+			result = Collections.unmodifiableList(Arrays.asList(output));
+		}
+
+		bucket.putRange(low, high, result);
+		return result;
+	}
+
+	/**
+	 * Records are sorted by damage value, then by display damage (see {@link AEItemStack#compareTo})
+	 */
+	private static boolean isInRange(final IAEItemStack record, final int low, final int high)
+	{
+		final AEItemDef def = ((AEItemStack) record).getDefinition();
+		final int damage = def.getDamageValue();
+		final int displayDamage = def.getDisplayDamage();
+		return (damage > low || damage == low && displayDamage >= low) && (damage < high || damage == high && displayDamage <= high);
+	}
+
+	/**
+	 * Mutable set of records (removal moves the last record into the gap), read through snapshots
+	 */
+	private static final class RecordSet
+	{
+		private IAEItemStack[] array = new IAEItemStack[4];
+		private int size;
+		private final Map<IAEItemStack, Integer> positions = new IdentityHashMap<>(4);
+		private List<IAEItemStack> snapshot;
+
+		private void add(final IAEItemStack stack)
+		{
+			if (this.positions.containsKey(stack))
+				return;
+
+			if (this.size == this.array.length)
+				this.array = Arrays.copyOf(this.array, this.size * 2);
+			this.positions.put(stack, this.size);
+			this.array[this.size++] = stack;
+			this.snapshot = null;
+		}
+
+		/**
+		 * @return false if the stack is absent
+		 */
+		private boolean remove(final IAEItemStack stack)
+		{
+			final Integer position = this.positions.remove(stack);
+			if (position == null)
+				return false;
+
+			final int last = --this.size;
+			if (position != last)
+			{
+				final IAEItemStack moved = this.array[last];
+				this.array[position] = moved;
+				this.positions.put(moved, position);
+			}
+			this.array[last] = null;
+			this.snapshot = null;
+			return true;
+		}
+
+		private List<IAEItemStack> snapshot()
+		{
+			List<IAEItemStack> snapshot = this.snapshot;
+			if (snapshot == null)
+				this.snapshot = snapshot = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(this.array, this.size)));
+			return snapshot;
+		}
+	}
+
+	private static final class ItemBucket
+	{
+		private static final int RANGE_CACHE_SIZE = 4;
+
+		private final RecordSet records = new RecordSet();
+		private final DamageMap byDamage = new DamageMap();
+
+		/**
+		 * Incremented on every change, validates the cached ore dictionary results
+		 */
+		private int version;
+
+		/**
+		 * Last damage ranges queried for a damageable item: low, high and result by slot
+		 */
+		private final int[] rangeBounds = new int[RANGE_CACHE_SIZE * 2];
+		private final List<?>[] rangeResults = new List<?>[RANGE_CACHE_SIZE];
+		private int nextRange;
+
+		private void add(final IAEItemStack stack, final int damage)
+		{
+			this.records.add(stack);
+			RecordSet damageRecords = this.byDamage.get(damage);
+			if (damageRecords == null)
+				this.byDamage.put(damage, damageRecords = new RecordSet());
+			damageRecords.add(stack);
+			this.changed();
+		}
+
+		/**
+		 * @return false if the stack is absent
+		 */
+		private boolean remove(final IAEItemStack stack, final int damage)
+		{
+			if (!this.records.remove(stack))
+				return false;
+
+			final RecordSet damageRecords = this.byDamage.get(damage);
+			if (damageRecords != null && damageRecords.remove(stack) && damageRecords.size == 0)
+				this.byDamage.remove(damage);
+			this.changed();
+			return true;
+		}
+
+		private void changed()
+		{
+			this.version++;
+			Arrays.fill(this.rangeResults, null);
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<IAEItemStack> getRange(final int low, final int high)
+		{
+			for (int i = 0; i < RANGE_CACHE_SIZE; i++)
+			{
+				if (this.rangeResults[i] != null && this.rangeBounds[i * 2] == low && this.rangeBounds[i * 2 + 1] == high)
+					return (List<IAEItemStack>) this.rangeResults[i];
+			}
+			return null;
+		}
+
+		private void putRange(final int low, final int high, final List<IAEItemStack> result)
+		{
+			final int i = this.nextRange;
+			this.nextRange = (i + 1) % RANGE_CACHE_SIZE;
+			this.rangeBounds[i * 2] = low;
+			this.rangeBounds[i * 2 + 1] = high;
+			this.rangeResults[i] = result;
+		}
+	}
+
+	/**
+	 * Record sets by damage value: open addressing with int keys (no boxing of the damage values)
+	 */
+	private static final class DamageMap
+	{
+		private int[] keys = new int[4];
+		private RecordSet[] values = new RecordSet[4];
+		private int size;
+
+		private RecordSet get(final int damage)
+		{
+			final int mask = this.keys.length - 1;
+			for (int i = index(damage, mask); this.values[i] != null; i = i + 1 & mask)
+			{
+				if (this.keys[i] == damage)
+					return this.values[i];
+			}
+			return null;
+		}
+
+		private void put(final int damage, final RecordSet value)
+		{
+			if ((this.size + 1) * 2 > this.keys.length)
+				this.resize(this.keys.length * 2);
+
+			final int mask = this.keys.length - 1;
+			int i = index(damage, mask);
+			while (this.values[i] != null && this.keys[i] != damage)
+			{
+				i = i + 1 & mask;
+			}
+			if (this.values[i] == null)
+				this.size++;
+			this.keys[i] = damage;
+			this.values[i] = value;
+		}
+
+		private void remove(final int damage)
+		{
+			final int mask = this.keys.length - 1;
+			int i = index(damage, mask);
+			while (this.values[i] != null && this.keys[i] != damage)
+			{
+				i = i + 1 & mask;
+			}
+			if (this.values[i] == null)
+				return;
+
+			this.values[i] = null;
+			this.size--;
+
+			// Moves the following entries of the probe sequence back into the gap
+			for (int j = i + 1 & mask; this.values[j] != null; j = j + 1 & mask)
+			{
+				final int home = index(this.keys[j], mask);
+				if ((j - home & mask) >= (j - i & mask))
+				{
+					this.keys[i] = this.keys[j];
+					this.values[i] = this.values[j];
+					this.values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void resize(final int capacity)
+		{
+			final int[] keys = this.keys;
+			final RecordSet[] values = this.values;
+			this.keys = new int[capacity];
+			this.values = new RecordSet[capacity];
+			this.size = 0;
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (values[i] != null)
+					this.put(keys[i], values[i]);
+			}
+		}
+
+		private static int index(final int damage, final int mask)
+		{
+			final int h = damage * 0x9E3779B9;
+			return (h ^ h >>> 16) & mask;
+		}
+	}
+
+	private static final class OreResult
+	{
+		private final List<IAEItemStack> equivalents;
+		private final ItemBucket[] buckets;
+		private final int[] versions;
+		private final FuzzyMode fuzzy;
+		private final Collection<IAEItemStack> records;
+
+		private OreResult(final List<IAEItemStack> equivalents, final ItemBucket[] buckets, final int[] versions, final FuzzyMode fuzzy, final Collection<IAEItemStack> records)
+		{
+			this.equivalents = equivalents;
+			this.buckets = buckets;
+			this.versions = versions;
+			this.fuzzy = fuzzy;
+			this.records = records;
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package appeng.util.item;
+
+import appeng.api.AEApi;
+import appeng.api.config.FuzzyMode;
+import appeng.api.storage.data.IAEItemStack;
+import appeng.api.storage.data.IItemList;
+import com.gamerforea.ae.EventConfig;
+import net.minecraftforge.oredict.OreDictionary;
+
+import java.util.*;
+
+/**
+ * {@link IItemList} backed by an open-addressing hash table (linear probing, the stacks are their own keys) for
+ * precise lookups. The sorted index for {@link #findFuzzy} is rebuilt lazily after the set of records changes
+ * (or {@link FuzzyIndex} is maintained if enabled).
+ * Unlike {@link ItemList}, iteration only skips records that are not meaningful and never removes them: they are
+ * dropped by the writer when the table is rehashed, so iterators, lookups and {@link #size()} do not write. The table
+ * is rehashed on insertion when full, or once the records made not meaningful through the add methods reach half
+ * of the record count, so lists that only shrink drop their dead records as well.
+ * <p>
+ * Single writer: readers on other threads get a weakly consistent view without exceptions, like with the
+ * concurrent maps of {@link ItemList}.
+ */
+public final class HashItemList implements IItemList<IAEItemStack>
+{
+	private static final int MIN_CAPACITY = 16;
+	private static final Object TOMBSTONE = new Object();
+
+	private volatile Object[] table = new Object[MIN_CAPACITY];
+	private int size;
+	private int tombstones;
+	private int deadRecords;
+	private volatile int modCount;
+	private volatile SortedRecords sorted;
+	private final FuzzyIndex fuzzyIndex = EventConfig.fuzzyItemListIndex ? new FuzzyIndex() : null;
+
+	@Override
+	public void add(final IAEItemStack option)
+	{
+		if (option == null)
+			return;
+
+		final IAEItemStack st = this.findPrecise(option);
+		if (st != null)
+		{
+			st.add(option);
+			this.recordChanged(st);
+			return;
+		}
+
+		this.putItemRecord(option.copy());
+	}
+
+	@Override
+	public IAEItemStack findPrecise(final IAEItemStack itemStack)
+	{
+		if (itemStack == null)
+			return null;
+
+		final Object[] table = this.table;
+		final int mask = table.length - 1;
+		for (int i = index(itemStack, mask); ; i = i + 1 & mask)
+		{
+			final Object o = table[i];
+			if (o == null)
+				return null;
+			if (o != TOMBSTONE && itemStack.equals(o))
+				return (IAEItemStack) o;
+		}
+	}
+
+	@Override
+	public Collection<IAEItemStack> findFuzzy(final IAEItemStack filter, final FuzzyMode fuzzy)
+	{
+		if (filter == null)
+			return Collections.emptyList();
+
+		final AEItemStack ais = (AEItemStack) filter;
+
+		if (this.fuzzyIndex != null)
+			return this.fuzzyIndex.findFuzzy(ais, fuzzy);
+
+		if (ais.isOre())
+		{
+			final OreReference or = ais.getDefinition().getIsOre();
+			final List<IAEItemStack> aeEquivalents = or.getAEEquivalents();
+
+			if (aeEquivalents.size() == 1)
+			{
+				final IAEItemStack is = aeEquivalents.get(0);
+				return this.findFuzzyDamage((AEItemStack) is, fuzzy, is.getItemDamage() == OreDictionary.WILDCARD_VALUE);
+			}
+
+			final Collection<IAEItemStack> output = new ArrayList<>();
+
+			for (final IAEItemStack is : aeEquivalents)
+			{
+				output.addAll(this.findFuzzyDamage((AEItemStack) is, fuzzy, is.getItemDamage() == OreDictionary.WILDCARD_VALUE));
+			}
+
+			return output;
+		}
+
+		return this.findFuzzyDamage(ais, fuzzy, false);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return !this.iterator().hasNext();
+	}
+
+	@Override
+	public void addStorage(final IAEItemStack option)
+	{
+		if (option == null)
+			return;
+
+		final IAEItemStack st = this.findPrecise(option);
+		if (st != null)
+		{
+			st.incStackSize(option.getStackSize());
+			this.recordChanged(st);
+			return;
+		}
+
+		this.putItemRecord(option.copy());
+	}
+
+	@Override
+	public void addCrafting(final IAEItemStack option)
+	{
+		if (option == null)
+			return;
+
+		final IAEItemStack st = this.findPrecise(option);
+		if (st != null)
+		{
+			st.setCraftable(true);
+			return;
+		}
+
+		final IAEItemStack opt = option.copy();
+		opt.setStackSize(0);
+		opt.setCraftable(true);
+
+		this.putItemRecord(opt);
+	}
+
+	@Override
+	public void addRequestable(final IAEItemStack option)
+	{
+		if (option == null)
+			return;
+
+		final IAEItemStack st = this.findPrecise(option);
+		if (st != null)
+		{
+			st.setCountRequestable(st.getCountRequestable() + option.getCountRequestable());
+			this.recordChanged(st);
+			return;
+		}
+
+		final IAEItemStack opt = option.copy();
+		opt.setStackSize(0);
+		opt.setCraftable(false);
+		opt.setCountRequestable(option.getCountRequestable());
+
+		this.putItemRecord(opt);
+	}
+
+	@Override
+	public IAEItemStack getFirstItem()
+	{
+		for (final IAEItemStack stackType : this)
+		{
+			return stackType;
+		}
+
+		return null;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public Iterator<IAEItemStack> iterator()
+	{
+		return new MeaningfulIterator(this.table);
+	}
+
+	@Override
+	public void resetStatus()
+	{
+		for (final IAEItemStack i : this)
+		{
+			i.reset();
+		}
+	}
+
+	/**
+	 * Counts the records an existing-record update left not meaningful (an estimate, a record may be counted twice)
+	 * and drops them once they reach half of the records
+	 */
+	private void recordChanged(final IAEItemStack record)
+	{
+		if (!record.isMeaningful() && ++this.deadRecords * 2 >= this.size)
+			this.rehash();
+	}
+
+	private void putItemRecord(final IAEItemStack itemStack)
+	{
+		if ((this.size + this.tombstones + 1) * 4 > this.table.length * 3)
+			this.rehash();
+
+		final Object[] table = this.table;
+		final int mask = table.length - 1;
+		int i = index(itemStack, mask);
+		while (table[i] != null)
+		{
+			if (table[i] == TOMBSTONE)
+			{
+				this.tombstones--;
+				break;
+			}
+			i = i + 1 & mask;
+		}
+
+		table[i] = itemStack;
+		this.size++;
+		this.modCount++;
+		if (this.fuzzyIndex != null)
+			this.fuzzyIndex.add(itemStack);
+	}
+
+	private boolean removeItemRecord(final Object[] table, final int i)
+	{
+		if (table != this.table)
+			return this.removeItemRecord((IAEItemStack) table[i]);
+
+		if (table[i] == null || table[i] == TOMBSTONE)
+			return false;
+
+		if (this.fuzzyIndex != null)
+			this.fuzzyIndex.remove((IAEItemStack) table[i]);
+		table[i] = TOMBSTONE;
+		this.size--;
+		this.tombstones++;
+		this.modCount++;
+		return true;
+	}
+
+	private boolean removeItemRecord(final IAEItemStack itemStack)
+	{
+		final Object[] table = this.table;
+		final int mask = table.length - 1;
+		for (int i = index(itemStack, mask); table[i] != null; i = i + 1 & mask)
+		{
+			if (table[i] == itemStack)
+				return this.removeItemRecord(table, i);
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the records that are not meaningful and resizes the table to twice the record count, which also drops
+	 * the tombstones (and shrinks the table if most of the records were removed)
+	 */
+	private void rehash()
+	{
+		final Object[] currentTable = this.table;
+		for (int i = 0; i < currentTable.length; i++)
+		{
+			final Object o = currentTable[i];
+			if (o != null && o != TOMBSTONE && !((IAEItemStack) o).isMeaningful())
+				this.removeItemRecord(currentTable, i);
+		}
+
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 < (this.size + 1) * 8)
+		{
+			capacity <<= 1;
+		}
+
+		final Object[] oldTable = this.table;
+		final Object[] table = new Object[capacity];
+		final int mask = capacity - 1;
+		for (final Object o : oldTable)
+		{
+			if (o != null && o != TOMBSTONE)
+			{
+				int i = index(o, mask);
+				while (table[i] != null)
+				{
+					i = i + 1 & mask;
+				}
+				table[i] = o;
+			}
+		}
+
+		this.tombstones = 0;
+		this.deadRecords = 0;
+		this.table = table;
+	}
+
+	public static IItemList<IAEItemStack> createItemList(final boolean hashItemList)
+	{
+		return hashItemList ? new HashItemList() : AEApi.instance().storage().createItemList();
+	}
+
+	private static int index(final Object itemStack, final int mask)
+	{
+		final int h = itemStack.hashCode() * 0x9E3779B9;
+		return (h ^ h >>> 16) & mask;
+	}
+
+	private Collection<IAEItemStack> findFuzzyDamage(final AEItemStack filter, final FuzzyMode fuzzy, final boolean ignoreMeta)
+	{
+		final AEItemStack low = (AEItemStack) filter.getLow(fuzzy, ignoreMeta);
+		final AEItemStack high = (AEItemStack) filter.getHigh(fuzzy, ignoreMeta);
+
+		// Readers may build the cache concurrently, it is only used while no record was added or removed since
+		final SortedRecords sortedRecords = this.sorted;
+		final int modCount = this.modCount;
+		IAEItemStack[] sorted;
+		if (sortedRecords != null && sortedRecords.modCount == modCount)
+			sorted = sortedRecords.records;
+		else
+		{
+			final Object[] table = this.table;
+			sorted = new IAEItemStack[table.length];
+			int count = 0;
+			for (final Object o : table)
+			{
+				if (o != null && o != TOMBSTONE)
+					sorted[count++] = (IAEItemStack) o;
+			}
+			sorted = Arrays.copyOf(sorted, count);
+			Arrays.sort(sorted);
+			this.sorted = new SortedRecords(sorted, modCount);
+		}
+
+		// First record >= low
+		int from = 0;
+		int to = sorted.length;
+		while (from < to)
+		{
+			final int mid = from + to >>> 1;
+			if (((AEItemStack) sorted[mid]).compareTo(low) < 0)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+
+		// Records <= high, in descending order like ItemList
+		final List<IAEItemStack> output = new ArrayList<>();
+		for (int i = from; i < sorted.length && ((AEItemStack) sorted[i]).compareTo(high) <= 0; i++)
+		{
+			output.add(sorted[i]);
+		}
+		Collections.reverse(output);
+		return output;
+	}
+
+	private static final class SortedRecords
+	{
+		private final IAEItemStack[] records;
+		private final int modCount;
+
+		private SortedRecords(final IAEItemStack[] records, final int modCount)
+		{
+			this.records = records;
+			this.modCount = modCount;
+		}
+	}
+
+	private final class MeaningfulIterator implements Iterator<IAEItemStack>
+	{
+		private final Object[] table;
+
+		/**
+		 * Next slot to scan
+		 */
+		private int cursor;
+		private IAEItemStack next;
+		private int nextIndex = -1;
+
+		/**
+		 * Slot of the record last returned by {@link #next()}, -1 if none or already removed
+		 */
+		private int lastIndex = -1;
+
+		private MeaningfulIterator(final Object[] table)
+		{
+			this.table = table;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (this.next != null)
+				return true;
+
+			while (this.cursor < this.table.length)
+			{
+				final int index = this.cursor++;
+				final Object o = this.table[index];
+				if (o != null && o != TOMBSTONE && ((IAEItemStack) o).isMeaningful())
+				{
+					this.next = (IAEItemStack) o;
+					this.nextIndex = index;
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		@Override
+		public IAEItemStack next()
+		{
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+
+			final IAEItemStack next = this.next;
+			this.lastIndex = this.nextIndex;
+			this.next = null;
+			return next;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (this.lastIndex < 0)
+				throw new IllegalStateException();
+
+			HashItemList.this.removeItemRecord(this.table, this.lastIndex);
+			this.lastIndex = -1;
+		}
+	}
+}
@@ -34,6 +34,7 @@ public final class ItemList implements IItemList<IAEItemStack>
 
 	// TODO gamerforEA code start
 	private final Map<IAEItemStack, IAEItemStack> unorderedRecords = EventConfig.useHybridItemList ? new ConcurrentHashMap<>() : this.records;
+	private final FuzzyIndex fuzzyIndex = EventConfig.fuzzyItemListIndex ? new FuzzyIndex() : null;
 	// TODO gamerforEA code end
 
 	@Override
@@ -77,6 +78,11 @@ public final class ItemList implements IItemList<IAEItemStack>
 
 		final AEItemStack ais = (AEItemStack) filter;
 
+		// TODO gamerforEA code start
+		if (this.fuzzyIndex != null)
+			return this.fuzzyIndex.findFuzzy(ais, fuzzy);
+		// TODO gamerforEA code end
+
 		if (ais.isOre())
 		{
 			final OreReference or = ais.getDefinition().getIsOre();
@@ -204,8 +210,8 @@ public final class ItemList implements IItemList<IAEItemStack>
 	public Iterator<IAEItemStack> iterator()
 	{
 		// TODO gamerforEA code start
-		if (this.unorderedRecords != this.records)
-			return new MeaningfulItemHybridIterator<>(this.records, this.unorderedRecords);
+		if (this.unorderedRecords != this.records || this.fuzzyIndex != null)
+			return new MeaningfulItemHybridIterator<>(this.records, this.unorderedRecords == this.records ? null : this.unorderedRecords, this.fuzzyIndex);
 		// TODO gamerforEA code end
 
 		return new MeaningfulItemIterator<>(this.records.values().iterator());
@@ -225,6 +231,8 @@ public final class ItemList implements IItemList<IAEItemStack>
 		// TODO gamerforEA code start
 		if (this.unorderedRecords != this.records)
 			this.unorderedRecords.put(itemStack, itemStack);
+		if (this.fuzzyIndex != null)
+			this.fuzzyIndex.add(itemStack);
 		// TODO gamerforEA code end
 
 		return this.records.put(itemStack, itemStack);
@@ -249,16 +257,30 @@ public final class ItemList implements IItemList<IAEItemStack>
 	{
 		// private final Map<T, T> parentPrimary;
 		private final Map<T, T> parentSecondary;
+		private final FuzzyIndex fuzzyIndex;
 		private final Iterator<T> parentPrimaryIterator;
 		private T next;
 
-		public MeaningfulItemHybridIterator(Map<T, T> parentPrimary, Map<T, T> parentSecondary)
+		/**
+		 * @param parentSecondary nullable
+		 * @param fuzzyIndex      nullable
+		 */
+		public MeaningfulItemHybridIterator(Map<T, T> parentPrimary, Map<T, T> parentSecondary, FuzzyIndex fuzzyIndex)
 		{
 			// this.parentPrimary = parentPrimary;
 			this.parentSecondary = parentSecondary;
+			this.fuzzyIndex = fuzzyIndex;
 			this.parentPrimaryIterator = parentPrimary.values().iterator();
 		}
 
+		private void removeSecondary(T stack)
+		{
+			if (this.parentSecondary != null)
+				this.parentSecondary.remove(stack);
+			if (this.fuzzyIndex != null)
+				this.fuzzyIndex.remove(stack);
+		}
+
 		@Override
 		public boolean hasNext()
 		{
@@ -270,7 +292,7 @@ public final class ItemList implements IItemList<IAEItemStack>
 					return true;
 
 				this.parentPrimaryIterator.remove(); // self cleaning :3
-				this.parentSecondary.remove(this.next);
+				this.removeSecondary(this.next);
 			}
 
 			this.next = null;
@@ -297,7 +319,7 @@ public final class ItemList implements IItemList<IAEItemStack>
 			}
 
 			this.parentPrimaryIterator.remove();
-			this.parentSecondary.remove(this.next);
+			this.removeSecondary(this.next);
 		}
 	}
 	// TODO gamerforEA code end
@@ -0,0 +1,103 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded contents of storage cells by the identity of the cell NBT, so the cell handlers rebuilt by drives and chests
+ * don't decode the same NBT again. Least recently used entries are evicted once the cached records exceed
+ * {@link EventConfig#cellItemCacheSize}. An entry is dropped when the cell writes its NBT, and ignored when the stored
+ * type and item counts of the NBT don't match it.
+ */
+public final class CellItemCache
+{
+	private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75F, true);
+	private static int size;
+
+	/**
+	 * @return records by NBT slot (null for skipped slots) or null if not cached, must not be modified
+	 */
+	public static synchronized IAEItemStack[] get(NBTTagCompound tagCompound, int types, long count)
+	{
+		if (ENTRIES.isEmpty())
+			return null;
+
+		Entry entry = ENTRIES.get(new Key(tagCompound));
+		if (entry == null)
+			return null;
+		if (entry.records.length == types && entry.count == count)
+			return entry.records;
+
+		remove(tagCompound);
+		return null;
+	}
+
+	/**
+	 * @param records records by NBT slot (null for skipped slots), must not be modified afterwards
+	 */
+	public static synchronized void put(NBTTagCompound tagCompound, long count, IAEItemStack[] records)
+	{
+		int maxSize = EventConfig.cellItemCacheSize;
+		if (records.length > maxSize)
+			return;
+
+		Entry old = ENTRIES.put(new Key(tagCompound), new Entry(records, count));
+		if (old != null)
+			size -= old.records.length;
+		size += records.length;
+
+		for (Iterator<Entry> iterator = ENTRIES.values().iterator(); size > maxSize && iterator.hasNext(); )
+		{
+			size -= iterator.next().records.length;
+			iterator.remove();
+		}
+	}
+
+	public static synchronized void remove(NBTTagCompound tagCompound)
+	{
+		if (ENTRIES.isEmpty())
+			return;
+
+		Entry entry = ENTRIES.remove(new Key(tagCompound));
+		if (entry != null)
+			size -= entry.records.length;
+	}
+
+	private static final class Key
+	{
+		private final NBTTagCompound tagCompound;
+
+		private Key(NBTTagCompound tagCompound)
+		{
+			this.tagCompound = tagCompound;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && ((Key) o).tagCompound == this.tagCompound;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(this.tagCompound);
+		}
+	}
+
+	private static final class Entry
+	{
+		private final IAEItemStack[] records;
+		private final long count;
+
+		private Entry(IAEItemStack[] records, long count)
+		{
+			this.records = records;
+			this.count = count;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+import appeng.util.item.AEItemStack;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.util.Arrays;
+
+/**
+ * Layout of the contents of a storage cell in its item NBT: the {@code #x} compound and {@code @x} count tags of every
+ * type plus the type and item count tags, tracking the slot tags present so a shrinking cell removes its stale ones.
+ * Other layouts extend it ({@link CompactCellNBTFormat}).
+ * Counts are written as int or long tags ({@link EventConfig#longCellCounts}) and read as long either way. A count out of
+ * the int range is always written as long, so switching the option off never truncates a cell.
+ */
+public class CellNBTFormat
+{
+	private static final String ITEM_TYPE_TAG = "it";
+	private static final String ITEM_COUNT_TAG = "ic";
+	private static final String ITEM_SLOT = "#";
+	private static final String ITEM_SLOT_COUNT = "@";
+	private static final String[] SLOT_NAMES = new String[63];
+	private static final String[] SLOT_COUNT_NAMES = new String[63];
+
+	static
+	{
+		for (int x = 0; x < SLOT_NAMES.length; x++)
+		{
+			SLOT_NAMES[x] = ITEM_SLOT + x;
+			SLOT_COUNT_NAMES[x] = ITEM_SLOT_COUNT + x;
+		}
+	}
+
+	protected final NBTTagCompound tagCompound;
+
+	/**
+	 * Slot tags present in the NBT
+	 */
+	protected int writtenSlots;
+
+	public CellNBTFormat(NBTTagCompound tagCompound)
+	{
+		this.tagCompound = tagCompound;
+		this.reset();
+	}
+
+	/**
+	 * Detects the layout again (another inventory of the same cell may have written the NBT)
+	 */
+	public void reset()
+	{
+		this.writtenSlots = this.tagCompound.getShort(ITEM_TYPE_TAG);
+	}
+
+	/**
+	 * @return records by slot, null for unknown items and empty slots
+	 */
+	public IAEItemStack[] read(int types)
+	{
+		IAEItemStack[] records = new IAEItemStack[types];
+		for (int x = 0; x < types; x++)
+		{
+			ItemStack is = ItemStack.loadItemStackFromNBT(this.tagCompound.getCompoundTag(getSlotName(x)));
+			if (is == null)
+				continue;
+
+			long count = this.tagCompound.getLong(getSlotCountName(x));
+			if (count <= 0)
+				continue;
+
+			IAEItemStack record = AEItemStack.create(is);
+			if (record != null)
+			{
+				record.setStackSize(count);
+				records[x] = record;
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Writes the whole contents
+	 *
+	 * @return stored item count
+	 */
+	public long write(IAEItemStack[] records, int size)
+	{
+		return this.writeSlots(records, null, size);
+	}
+
+	/**
+	 * Rewrites the changed slots only, as far as the layout allows it
+	 *
+	 * @param dirtySlots changed slots, cleared
+	 * @return stored item count
+	 */
+	public long write(IAEItemStack[] records, boolean[] dirtySlots, int size)
+	{
+		long itemCount = this.writeSlots(records, dirtySlots, size);
+		Arrays.fill(dirtySlots, false);
+		return itemCount;
+	}
+
+	public void writeItemCount(long itemCount)
+	{
+		this.setCount(ITEM_COUNT_TAG, itemCount);
+	}
+
+	/**
+	 * @param dirtySlots slots to rewrite or null to rewrite all of them
+	 */
+	protected long writeSlots(IAEItemStack[] records, boolean[] dirtySlots, int size)
+	{
+		long itemCount = 0;
+		for (int x = 0; x < size; x++)
+		{
+			IAEItemStack record = records[x];
+			itemCount += record.getStackSize();
+			if (dirtySlots != null && !dirtySlots[x])
+				continue;
+
+			String slotName = getSlotName(x);
+			NBTBase tag = this.tagCompound.getTag(slotName);
+			if (tag instanceof NBTTagCompound)
+				record.writeToNBT((NBTTagCompound) tag);
+			else
+			{
+				NBTTagCompound newTag = new NBTTagCompound();
+				record.writeToNBT(newTag);
+				this.tagCompound.setTag(slotName, newTag);
+			}
+
+			this.setCount(getSlotCountName(x), record.getStackSize());
+		}
+
+		this.removeSlots(size);
+		this.writeTotals(size, itemCount);
+		return itemCount;
+	}
+
+	protected void removeSlots(int from)
+	{
+		for (int x = from; x < this.writtenSlots; x++)
+		{
+			this.tagCompound.removeTag(getSlotName(x));
+			this.tagCompound.removeTag(getSlotCountName(x));
+		}
+		this.writtenSlots = from;
+	}
+
+	protected void writeTotals(int types, long itemCount)
+	{
+		if (types == 0)
+			this.tagCompound.removeTag(ITEM_TYPE_TAG);
+		else
+			this.tagCompound.setShort(ITEM_TYPE_TAG, (short) types);
+
+		if (itemCount == 0)
+			this.tagCompound.removeTag(ITEM_COUNT_TAG);
+		else
+			this.setCount(ITEM_COUNT_TAG, itemCount);
+	}
+
+	private void setCount(String key, long count)
+	{
+		if (EventConfig.longCellCounts || count != (int) count)
+			this.tagCompound.setLong(key, count);
+		else
+			this.tagCompound.setInteger(key, (int) count);
+	}
+
+	private static String getSlotName(int x)
+	{
+		return x < SLOT_NAMES.length ? SLOT_NAMES[x] : ITEM_SLOT + x;
+	}
+
+	private static String getSlotCountName(int x)
+	{
+		return x < SLOT_COUNT_NAMES.length ? SLOT_COUNT_NAMES[x] : ITEM_SLOT_COUNT + x;
+	}
+}
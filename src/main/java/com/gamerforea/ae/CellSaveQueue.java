@@ -0,0 +1,70 @@
+package com.gamerforea.ae;
+
+import appeng.hooks.TickHandler;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.World;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Write-behind queue of the cell inventories of a drive or chest: the changes of a cell are written to its NBT at most
+ * once per tick, at the end of the world tick or earlier when the owner is saved, rebuilds its cell handlers or hands
+ * out a cell stack through {@link CellSlotInventory} (the NBT of the cell item must be up to date whenever it may be
+ * read).
+ */
+public final class CellSaveQueue
+{
+	public interface Owner
+	{
+		CellSaveQueue getCellSaveQueue();
+	}
+
+	public interface Entry
+	{
+		void writeChanges();
+	}
+
+	private final TileEntity owner;
+	private final Set<Entry> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean scheduled;
+
+	public CellSaveQueue(TileEntity owner)
+	{
+		this.owner = owner;
+	}
+
+	public void add(Entry entry)
+	{
+		if (!this.entries.add(entry) || this.scheduled)
+			return;
+
+		World world = this.owner.getWorldObj();
+		if (world == null)
+		{
+			this.flush();
+			return;
+		}
+
+		this.scheduled = true;
+		TickHandler.INSTANCE.addCallable(world, w -> {
+			this.flush();
+			return null;
+		});
+	}
+
+	public void flush()
+	{
+		this.scheduled = false;
+		if (this.entries.isEmpty())
+			return;
+
+		Entry[] entries = this.entries.toArray(new Entry[0]);
+		this.entries.clear();
+		for (Entry entry : entries)
+		{
+			entry.writeChanges();
+		}
+	}
+}
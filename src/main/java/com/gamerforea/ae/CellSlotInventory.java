@@ -0,0 +1,58 @@
+package com.gamerforea.ae;
+
+import appeng.tile.inventory.AppEngInternalInventory;
+import appeng.tile.inventory.IAEAppEngInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.util.Iterator;
+
+/**
+ * Cell slots of a drive or chest: flushes the {@link CellSaveQueue} before a cell stack is handed out (containers,
+ * automation, drops, NBT), so the NBT of the stack is never behind the cell inventory
+ */
+public final class CellSlotInventory extends AppEngInternalInventory
+{
+	private final CellSaveQueue cellSaveQueue;
+
+	public CellSlotInventory(IAEAppEngInventory inventory, int size, CellSaveQueue cellSaveQueue)
+	{
+		super(inventory, size);
+		this.cellSaveQueue = cellSaveQueue;
+	}
+
+	@Override
+	public ItemStack getStackInSlot(int slot)
+	{
+		this.cellSaveQueue.flush();
+		return super.getStackInSlot(slot);
+	}
+
+	@Override
+	public ItemStack decrStackSize(int slot, int qty)
+	{
+		this.cellSaveQueue.flush();
+		return super.decrStackSize(slot, qty);
+	}
+
+	@Override
+	public ItemStack getStackInSlotOnClosing(int slot)
+	{
+		this.cellSaveQueue.flush();
+		return super.getStackInSlotOnClosing(slot);
+	}
+
+	@Override
+	public void writeToNBT(NBTTagCompound data, String name)
+	{
+		this.cellSaveQueue.flush();
+		super.writeToNBT(data, name);
+	}
+
+	@Override
+	public Iterator<ItemStack> iterator()
+	{
+		this.cellSaveQueue.flush();
+		return super.iterator();
+	}
+}
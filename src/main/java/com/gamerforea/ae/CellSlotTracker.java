@@ -0,0 +1,135 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Incremental save of a cell inventory ({@link EventConfig#incrementalCellSave}): assigns the records of the cell item
+ * list to NBT slots and tracks the changed slots, so a save only rewrites those. The used slots stay contiguous.
+ */
+public final class CellSlotTracker
+{
+	private IAEItemStack[] records;
+	private boolean[] dirtySlots;
+	private final Map<IAEItemStack, Integer> recordSlots = new IdentityHashMap<>();
+	private int size;
+
+	/**
+	 * @return false until the contents are loaded
+	 */
+	public boolean isLoaded()
+	{
+		return this.records != null;
+	}
+
+	public void reset(int capacity)
+	{
+		this.records = new IAEItemStack[Math.max(capacity, 1)];
+		this.dirtySlots = new boolean[this.records.length];
+		this.recordSlots.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * @param x      slot the record was read from
+	 * @param record record of the cell item list
+	 */
+	public void load(int x, IAEItemStack record)
+	{
+		if (record == null)
+			return;
+
+		Integer slot = this.recordSlots.get(record);
+		if (slot != null)
+			// Duplicate entry, merged into one record
+			this.dirtySlots[slot] = true;
+		else
+		{
+			this.add(record);
+
+			// The slot is not rewritten unless the previous entries were skipped
+			this.dirtySlots[this.size - 1] = this.size - 1 != x;
+		}
+	}
+
+	/**
+	 * @param record changed record of the cell item list
+	 */
+	public void update(IAEItemStack record)
+	{
+		Integer slot = this.recordSlots.get(record);
+		if (record.getStackSize() <= 0)
+		{
+			if (slot != null)
+				this.remove(record, slot);
+		}
+		else if (slot == null)
+			this.add(record);
+		else
+			this.dirtySlots[slot] = true;
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	public long getItemCount()
+	{
+		long itemCount = 0;
+		for (int x = 0; x < this.size; x++)
+		{
+			itemCount += this.records[x].getStackSize();
+		}
+		return itemCount;
+	}
+
+	/**
+	 * Writes the changed slots and clears them
+	 *
+	 * @return stored item count
+	 */
+	public long write(CellNBTFormat format)
+	{
+		return format.write(this.records, this.dirtySlots, this.size);
+	}
+
+	private void add(IAEItemStack record)
+	{
+		int slot = this.size;
+		if (slot == this.records.length)
+		{
+			this.records = Arrays.copyOf(this.records, slot * 2);
+			this.dirtySlots = Arrays.copyOf(this.dirtySlots, slot * 2);
+		}
+
+		this.records[slot] = record;
+		this.dirtySlots[slot] = true;
+		this.recordSlots.put(record, slot);
+		this.size++;
+	}
+
+	/**
+	 * Moves the last record to the removed slot
+	 */
+	private void remove(IAEItemStack record, int slot)
+	{
+		int last = this.size - 1;
+		this.recordSlots.remove(record);
+
+		if (slot != last)
+		{
+			IAEItemStack moved = this.records[last];
+			this.records[slot] = moved;
+			this.dirtySlots[slot] = true;
+			this.recordSlots.put(moved, slot);
+		}
+
+		this.records[last] = null;
+		this.dirtySlots[last] = false;
+		this.size--;
+	}
+}
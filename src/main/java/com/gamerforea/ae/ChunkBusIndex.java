@@ -0,0 +1,144 @@
+package com.gamerforea.ae;
+
+import appeng.me.Grid;
+import appeng.parts.AEBasePart;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.LongHashMap;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.World;
+
+import java.util.*;
+
+/**
+ * Index of bus parts by the chunks they can interact with.
+ * A bus is registered in every chunk within two blocks of it (the bus itself, its target and the second half of
+ * a double chest), so at most four chunks per bus.
+ * The worlds are referenced by dimension id, so the index never keeps an unloaded world.
+ * A bus without a tile yet is kept pending and indexed when its tile appears (before the next lookup).
+ */
+public final class ChunkBusIndex
+{
+	private static final int RADIUS = 2;
+
+	private final Map<Integer, LongHashMap> worlds = new HashMap<>();
+	private final Map<AEBasePart, Entry> entries = new IdentityHashMap<>();
+	private final Map<AEBasePart, Grid> pending = new IdentityHashMap<>();
+
+	public synchronized void add(AEBasePart part, Grid grid)
+	{
+		this.removeEntry(this.entries.get(part));
+		this.pending.remove(part);
+
+		if (!this.index(part, grid))
+			this.pending.put(part, grid);
+	}
+
+	private boolean index(AEBasePart part, Grid grid)
+	{
+		TileEntity tile = part.getTile();
+		if (tile == null || tile.getWorldObj() == null)
+			return false;
+
+		int dimension = tile.getWorldObj().provider.dimensionId;
+		int minChunkX = tile.xCoord - RADIUS >> 4;
+		int maxChunkX = tile.xCoord + RADIUS >> 4;
+		int minChunkZ = tile.zCoord - RADIUS >> 4;
+		int maxChunkZ = tile.zCoord + RADIUS >> 4;
+		long[] chunkKeys = new long[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+		int i = 0;
+		for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++)
+		{
+			for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++)
+			{
+				chunkKeys[i++] = ChunkCoordIntPair.chunkXZ2Int(chunkX, chunkZ);
+			}
+		}
+
+		Entry entry = new Entry(part, grid, dimension, chunkKeys);
+		this.entries.put(part, entry);
+
+		LongHashMap chunks = this.worlds.computeIfAbsent(dimension, k -> new LongHashMap());
+		for (long chunkKey : chunkKeys)
+		{
+			List<Entry> chunkEntries = (List<Entry>) chunks.getValueByKey(chunkKey);
+			if (chunkEntries == null)
+				chunks.add(chunkKey, chunkEntries = new ArrayList<>(2));
+			chunkEntries.add(entry);
+		}
+		return true;
+	}
+
+	public synchronized void remove(AEBasePart part, Grid grid)
+	{
+		Entry entry = this.entries.get(part);
+		if (entry != null && entry.grid == grid)
+			this.removeEntry(entry);
+		else if (this.pending.get(part) == grid)
+			this.pending.remove(part);
+	}
+
+	private void removeEntry(Entry entry)
+	{
+		if (entry == null)
+			return;
+
+		this.entries.remove(entry.part);
+
+		LongHashMap chunks = this.worlds.get(entry.dimension);
+		if (chunks == null)
+			return;
+
+		for (long chunkKey : entry.chunkKeys)
+		{
+			List<Entry> chunkEntries = (List<Entry>) chunks.getValueByKey(chunkKey);
+			if (chunkEntries != null)
+			{
+				chunkEntries.remove(entry);
+				if (chunkEntries.isEmpty())
+					chunks.remove(chunkKey);
+			}
+		}
+
+		if (chunks.getNumHashElements() == 0)
+			this.worlds.remove(entry.dimension);
+	}
+
+	/**
+	 * @return copy of the entries registered in the chunk (may be modified by the caller)
+	 */
+	public synchronized List<Entry> get(World world, int chunkX, int chunkZ)
+	{
+		if (!this.pending.isEmpty())
+			this.pending.entrySet().removeIf(entry -> this.index(entry.getKey(), entry.getValue()));
+
+		LongHashMap chunks = this.worlds.get(world.provider.dimensionId);
+		if (chunks == null)
+			return Collections.emptyList();
+
+		List<Entry> chunkEntries = (List<Entry>) chunks.getValueByKey(ChunkCoordIntPair.chunkXZ2Int(chunkX, chunkZ));
+		return chunkEntries == null ? Collections.emptyList() : new ArrayList<>(chunkEntries);
+	}
+
+	public synchronized void clear()
+	{
+		this.worlds.clear();
+		this.entries.clear();
+		this.pending.clear();
+	}
+
+	public static final class Entry
+	{
+		public final AEBasePart part;
+		public final Grid grid;
+		private final int dimension;
+		private final long[] chunkKeys;
+
+		private Entry(AEBasePart part, Grid grid, int dimension, long[] chunkKeys)
+		{
+			this.part = part;
+			this.grid = grid;
+			this.dimension = dimension;
+			this.chunkKeys = chunkKeys;
+		}
+	}
+}
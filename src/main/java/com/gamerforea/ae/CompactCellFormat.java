@@ -0,0 +1,157 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+import appeng.api.storage.data.IAETagCompound;
+import appeng.util.item.AEItemStack;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact encoding of the cell contents: one byte array with the item id, damage value, NBT reference and count of
+ * every stored type (varints), plus a list of the distinct item NBT compounds.
+ * Replaces the {@code #x} compound and {@code @x} count tags of every type; the type and item count tags are kept.
+ */
+public final class CompactCellFormat
+{
+	public static final int VERSION = 1;
+	private static final String VERSION_TAG = "cv";
+	private static final String DATA_TAG = "cd";
+	private static final String NBT_TAG = "cn";
+
+	public static boolean isCompact(NBTTagCompound tagCompound)
+	{
+		return tagCompound.hasKey(DATA_TAG, 7);
+	}
+
+	/**
+	 * Contents written by a newer format version can't be read (and must not be overwritten)
+	 */
+	public static boolean isSupported(NBTTagCompound tagCompound)
+	{
+		return !isCompact(tagCompound) || tagCompound.getByte(VERSION_TAG) <= VERSION;
+	}
+
+	/**
+	 * @return records in stored order, null for unknown items and the types missing in the data
+	 */
+	public static IAEItemStack[] read(NBTTagCompound tagCompound, int types)
+	{
+		IAEItemStack[] records = new IAEItemStack[types];
+		byte[] data = tagCompound.getByteArray(DATA_TAG);
+		NBTTagList tags = tagCompound.getTagList(NBT_TAG, 10);
+		int[] pos = { 0 };
+
+		for (int x = 0; x < types && pos[0] < data.length; x++)
+		{
+			Item item = Item.getItemById((int) readVarLong(data, pos));
+			int damage = zigZagDecode((int) readVarLong(data, pos));
+			int tagIndex = (int) readVarLong(data, pos) - 1;
+			long count = readVarLong(data, pos);
+
+			if (item == null || count <= 0)
+				continue;
+
+			ItemStack is = new ItemStack(item, 1, damage);
+			if (tagIndex >= 0 && tagIndex < tags.tagCount())
+				is.setTagCompound(tags.getCompoundTagAt(tagIndex));
+
+			IAEItemStack record = AEItemStack.create(is);
+			if (record != null)
+			{
+				record.setStackSize(count);
+				records[x] = record;
+			}
+		}
+
+		return records;
+	}
+
+	public static void write(NBTTagCompound tagCompound, IAEItemStack[] records, int size)
+	{
+		byte[] data = new byte[size * 8];
+		int pos = 0;
+		NBTTagList tags = new NBTTagList();
+		List<Object> distinctTags = new ArrayList<>();
+
+		for (int x = 0; x < size; x++)
+		{
+			IAEItemStack record = records[x];
+			int tagIndex = 0;
+			IAETagCompound tag = record.getTagCompound();
+			if (tag != null)
+			{
+				// Shared tags are interned, so duplicates are mostly the same instance
+				tagIndex = distinctTags.indexOf(tag) + 1;
+				if (tagIndex == 0)
+				{
+					distinctTags.add(tag);
+					// Copied like IAEItemStack.writeToNBT does, the interned tags must not end up in the cell NBT
+					NBTTagCompound nbt = tag instanceof NBTTagCompound ? (NBTTagCompound) tag : record.getItemStack().getTagCompound();
+					tags.appendTag(nbt.copy());
+					tagIndex = distinctTags.size();
+				}
+			}
+
+			if (data.length - pos < 4 * 10)
+				data = Arrays.copyOf(data, data.length * 2 + 4 * 10);
+			pos = writeVarLong(data, pos, Item.getIdFromItem(record.getItem()));
+			pos = writeVarLong(data, pos, zigZagEncode(record.getItemDamage()) & 0xFFFFFFFFL);
+			pos = writeVarLong(data, pos, tagIndex);
+			pos = writeVarLong(data, pos, record.getStackSize());
+		}
+
+		tagCompound.setByte(VERSION_TAG, (byte) VERSION);
+		tagCompound.setByteArray(DATA_TAG, Arrays.copyOf(data, pos));
+		if (tags.tagCount() == 0)
+			tagCompound.removeTag(NBT_TAG);
+		else
+			tagCompound.setTag(NBT_TAG, tags);
+	}
+
+	public static void clear(NBTTagCompound tagCompound)
+	{
+		tagCompound.removeTag(VERSION_TAG);
+		tagCompound.removeTag(DATA_TAG);
+		tagCompound.removeTag(NBT_TAG);
+	}
+
+	private static int writeVarLong(byte[] data, int pos, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			data[pos++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+		return pos;
+	}
+
+	private static long readVarLong(byte[] data, int[] pos)
+	{
+		long value = 0;
+		for (int shift = 0; pos[0] < data.length && shift < 64; shift += 7)
+		{
+			byte b = data[pos[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+		return value;
+	}
+
+	private static int zigZagEncode(int value)
+	{
+		return value << 1 ^ value >> 31;
+	}
+
+	private static int zigZagDecode(int value)
+	{
+		return value >>> 1 ^ -(value & 1);
+	}
+}
@@ -0,0 +1,96 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.util.Arrays;
+
+/**
+ * {@link CellNBTFormat} that also reads and writes {@link CompactCellFormat}: writes use the layout selected by
+ * {@link EventConfig#compactCellFormat} and remove the tags of the other one (lazy migration)
+ */
+public final class CompactCellNBTFormat extends CellNBTFormat
+{
+	/**
+	 * The contents are stored in {@link CompactCellFormat}
+	 */
+	private boolean compact;
+
+	public CompactCellNBTFormat(NBTTagCompound tagCompound)
+	{
+		super(tagCompound);
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		this.compact = CompactCellFormat.isCompact(this.tagCompound);
+		if (this.compact)
+			this.writtenSlots = 0;
+	}
+
+	@Override
+	public IAEItemStack[] read(int types)
+	{
+		return this.compact ? CompactCellFormat.read(this.tagCompound, types) : super.read(types);
+	}
+
+	@Override
+	public long write(IAEItemStack[] records, int size)
+	{
+		return EventConfig.compactCellFormat ? this.writeCompact(records, size) : super.write(records, size);
+	}
+
+	/**
+	 * The compact data is always written as a whole
+	 */
+	@Override
+	public long write(IAEItemStack[] records, boolean[] dirtySlots, int size)
+	{
+		// The slot tags don't exist yet when migrating from the compact layout
+		if (!EventConfig.compactCellFormat && !this.compact)
+			return super.write(records, dirtySlots, size);
+
+		long itemCount = this.write(records, size);
+		Arrays.fill(dirtySlots, false);
+		return itemCount;
+	}
+
+	@Override
+	protected long writeSlots(IAEItemStack[] records, boolean[] dirtySlots, int size)
+	{
+		long itemCount = super.writeSlots(records, dirtySlots, size);
+		if (this.compact)
+		{
+			CompactCellFormat.clear(this.tagCompound);
+			this.compact = false;
+		}
+		return itemCount;
+	}
+
+	private long writeCompact(IAEItemStack[] records, int size)
+	{
+		long itemCount = 0;
+		for (int x = 0; x < size; x++)
+		{
+			itemCount += records[x].getStackSize();
+		}
+
+		this.removeSlots(0);
+
+		if (size == 0)
+		{
+			CompactCellFormat.clear(this.tagCompound);
+			this.compact = false;
+		}
+		else
+		{
+			CompactCellFormat.write(this.tagCompound, records, size);
+			this.compact = true;
+		}
+
+		this.writeTotals(size, itemCount);
+		return itemCount;
+	}
+}
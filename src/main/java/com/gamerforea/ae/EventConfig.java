@@ -88,11 +88,6 @@ public final class EventConfig
 				   oldCategory = CATEGORY_GENERAL)
 	public static boolean experimentalChunkDupeFix = false;
 
-	@ConfigBoolean(category = CATEGORY_OTHER_OLD_CHUNK_FIX,
-				   comment = "Использовать более оптимальный алгоритм фикса дюпа с чанками (может снизить надёжность)",
-				   oldCategory = CATEGORY_GENERAL)
-	public static boolean fastChunkDupeFix = false;
-
 	@ConfigFloat(category = CATEGORY_OTHER,
 				 comment = "Урон Заряженного посоха",
 				 min = 0,
@@ -169,14 +164,68 @@ public final class EventConfig
 	public static boolean useHybridItemList = false;
 
 	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
-				   comment = "Оптимизировать обновление содержимого МЭ-сети (небезопасно) (не рекомендуется)",
-				   oldCategory = CATEGORY_GENERAL)
-	public static boolean optimizeNetworkPostChange = false;
+				   comment = "Использовать хеш-таблицу с открытой адресацией вместо ConcurrentSkipListMap для списка предметов МЭ-сети (NetworkMonitor)")
+	public static boolean hashItemListNetwork = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Использовать хеш-таблицу с открытой адресацией вместо ConcurrentSkipListMap для списка предметов ячеек хранения (CellInventory)")
+	public static boolean hashItemListCells = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Использовать хеш-таблицу с открытой адресацией вместо ConcurrentSkipListMap для списков расчёта автокрафта (CraftingJob)")
+	public static boolean hashItemListCrafting = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Индекс списков предметов по предмету и урону для нечёткого поиска (нечёткие шины хранения и экспорта, поиск по словарю руд)")
+	public static boolean fuzzyItemListIndex = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Обновлять кэшированный список предметов МЭ-сети по изменениям вместо полного пересчёта по всей сети после каждого изменения")
+	public static boolean deltaNetworkStorageList = false;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Интервал полного пересчёта списка предметов МЭ-сети для исправления возможной рассинхронизации (deltaNetworkStorageList) (в тиках) (0 - только при изменении ячеек и шаблонов)",
+			   min = 0)
+	public static int networkStorageListCheckInterval = 1200;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Накапливать изменения предметов МЭ-сети за тик и рассылать слушателям (терминалы, эмиттеры уровня) один объединённый список в конце тика")
+	public static boolean batchNetworkChanges = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Специализированный индекс отслеживаемых предметов (эмиттеры уровня, мониторы хранилища) вместо HashMultimap (одно вычисление хеша и без выделения памяти при проверке)")
+	public static boolean stackInterestIndex = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Индекс эмиттеров уровня по отслеживаемому количеству и порогу (при изменении проверяются только эмиттеры, порог которых был пересечён, общее количество предметов поддерживается по изменениям)")
+	public static boolean levelEmitterThresholdIndex = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Записывать в NBT ячейки только изменённые слоты, запись ячеек в накопителях и МЭ-сундуках откладывается до конца тика (не более одной записи за тик на ячейку)")
+	public static boolean incrementalCellSave = false;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Максимальное количество записей в кэше прочитанного содержимого ячеек (повторное создание обработчиков ячеек в накопителях и МЭ-сундуках не читает NBT заново) (0 - кэш выключен)",
+			   min = 0)
+	public static int cellItemCacheSize = 0;
 
 	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
-				   comment = "Предотвращать копирование NetworkList, если возможно (может повысить производительность при загрузки/выгрузке чанков в МЭ-сетью) (небезопасно)",
+				   comment = "Компактный бинарный формат хранения содержимого ячеек (ячейки в старом формате переписываются при первом изменении) (ячейки в новом формате не читаются старыми версиями мода, при выключении ячейки возвращаются в старый формат при изменении)")
+	public static boolean compactCellFormat = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Хранить количество предметов в ячейках как long (извлечение из ячейки без ограничения в Integer.MAX_VALUE за операцию) (ячейки с количеством больше Integer.MAX_VALUE некорректно читаются старыми версиями мода)")
+	public static boolean longCellCounts = false;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Количество потоков для параллельного расчёта независимых веток дерева автокрафта (общий пул потоков для всех расчётов) (0 - расчёт в одном потоке)",
+			   min = 0)
+	public static int parallelCraftingThreads = 0;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Оптимизировать обновление содержимого МЭ-сети (небезопасно) (не рекомендуется)",
 				   oldCategory = CATEGORY_GENERAL)
-	public static boolean preventCopyOnWriteNetworkList = false;
+	public static boolean optimizeNetworkPostChange = false;
 
 	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
 				   comment = "Оптимизировать обработку энергосетей",
@@ -192,6 +241,42 @@ public final class EventConfig
 				   comment = "Выключить перебор всех рецептов при несовпадении шаблона (может значительно повысить производительность Молекулярного сборщика) (некоторые рецепты могут перестать работать в Молекулярном сборщике)")
 	public static boolean disableRecipeFallback = false;
 
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Бюджет времени на обработку МЭ-сетей за тик (в микросекундах) (важные сети обрабатываются первыми, не уложившиеся в бюджет - в следующем тике по кругу) (0 - без ограничений)",
+			   min = 0)
+	public static int gridTickBudget = 0;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Параллельная обработка МЭ-сетей разных миров (в других потоках обрабатываются только сети без шин, интерфейсов, сборщиков, плоскостей, P2P-туннелей, Квантовых мостов и блоков других модов - остальные обрабатываются в основном потоке, поэтому опция полезна только при большом количестве простых сетей в разных мирах) (gridTickBudget игнорируется) (экспериментально, небезопасно)")
+	public static boolean parallelGridTicking = false;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Количество потоков для параллельной обработки МЭ-сетей (0 - по количеству ядер процессора)",
+			   min = 0)
+	public static int parallelGridTickingThreads = 0;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Максимальное время обработки очереди отложенных задач МЭ-сетей для каждого мира за тик (в миллисекундах) (статистика - команда '/ae2 callqueue')",
+			   min = 1)
+	public static int callQueueBudget = 50;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Объединять события изменения ячеек МЭ-сети (MENetworkCellArrayUpdate) в одно обновление в конце тика сети (или при первом обращении к хранилищу сети)")
+	public static boolean coalesceCellArrayUpdates = false;
+
+	@ConfigInt(category = CATEGORY_PERFORMANCE,
+			   comment = "Максимальное количество типов предметов в кэше маршрутов помещения предметов в МЭ-сеть (ячейки и шины хранения, не принимающие предмет, пропускаются без проверки) (0 - кэш выключен)",
+			   min = 0)
+	public static int injectionRoutingCacheSize = 0;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Индекс ячеек в МЭ-приводах по хранимым предметам (извлечение предметов обращается только к ячейкам, содержащим предмет) (требует incrementalNetworkStorage)")
+	public static boolean extractionLocatorIndex = false;
+
+	@ConfigBoolean(category = CATEGORY_PERFORMANCE,
+				   comment = "Инкрементальное обновление хранилища МЭ-сети при изменении ячеек (вместо полной перестройки)")
+	public static boolean incrementalNetworkStorage = false;
+
 	@ConfigBoolean(category = CATEGORY_OTHER_STRICT,
 				   comment = "Фикс обновления сети автокрафта (небезопасно)",
 				   oldCategory = CATEGORY_GENERAL)
@@ -210,6 +295,15 @@ public final class EventConfig
 	@ConfigBoolean(category = CATEGORY_DEBUG, comment = "Профилирование МЭ-сетей (команда '/ae2 gridperf')")
 	public static boolean gridProfiling = false;
 
+	@ConfigInt(category = CATEGORY_DEBUG,
+			   comment = "Окно профилирования МЭ-сетей (в тиках) для расчёта p50/p99/max",
+			   min = 1)
+	public static int gridProfilingWindow = 1200;
+
+	@ConfigBoolean(category = CATEGORY_DEBUG,
+				   comment = "Сверять инкрементально обновляемое хранилище МЭ-сети с полностью перестроенным (incrementalNetworkStorage) (медленно)")
+	public static boolean verifyIncrementalNetworkStorage = false;
+
 	public static void init()
 	{
 		ConfigUtils.readConfig(EventConfig.class);
@@ -0,0 +1,335 @@
+package com.gamerforea.ae;
+
+import appeng.api.config.FuzzyMode;
+import appeng.api.storage.IMEMonitor;
+import appeng.api.storage.data.IAEItemStack;
+import appeng.api.storage.data.IItemList;
+import appeng.util.item.AEItemStack;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.oredict.OreDictionary;
+
+import java.util.*;
+
+/**
+ * Level emitters of a grid grouped by watched amount (total item count, precise stack or fuzzy filter) and sorted by
+ * threshold, like the {@link appeng.me.energy.EnergyThreshold} set of the energy grid.
+ * A change of the amount notifies only the hosts whose threshold lies between the old and the new amount,
+ * the amounts of the total and precise groups are maintained from the change deltas.
+ * The hosts that were not notified keep an outdated amount on the same side of their threshold.
+ */
+public final class LevelEmitterIndex
+{
+	public interface Host
+	{
+		/**
+		 * Called on registration and when the amount crosses the threshold of the host
+		 */
+		void onLevelChange(long amount);
+	}
+
+	private final Map<Host, Threshold> hosts = new IdentityHashMap<>();
+	private final Group total = new Group(null, null);
+	private final Map<IAEItemStack, Group> preciseGroups = new HashMap<>();
+	private final List<Group> fuzzyGroups = new ArrayList<>();
+	private final Map<Item, List<Group>> fuzzyGroupsByItem = new IdentityHashMap<>();
+	private final List<Group> dirtyGroups = new ArrayList<>();
+	private boolean dirty;
+	private int sequence;
+
+	/**
+	 * @param filter null to watch the total item count
+	 * @param fuzzy  null for the precise amount of the filter
+	 */
+	public void register(Host host, IAEItemStack filter, FuzzyMode fuzzy, long threshold, IMEMonitor<IAEItemStack> monitor)
+	{
+		this.unregister(host);
+
+		Group group;
+		if (filter == null)
+		{
+			group = this.total;
+			if (group.thresholds.isEmpty())
+				group.amount = this.computeAmount(group, monitor);
+		}
+		else if (fuzzy == null)
+		{
+			group = this.preciseGroups.get(filter);
+			if (group == null)
+			{
+				group = new Group(filter.copy(), null);
+				group.amount = this.computeAmount(group, monitor);
+				this.preciseGroups.put(group.filter, group);
+			}
+		}
+		else
+		{
+			group = null;
+			for (Group g : this.fuzzyGroups)
+			{
+				if (g.fuzzy == fuzzy && g.filter.equals(filter))
+				{
+					group = g;
+					break;
+				}
+			}
+
+			if (group == null)
+			{
+				group = new Group(filter.copy(), fuzzy);
+				group.amount = this.computeAmount(group, monitor);
+				this.fuzzyGroups.add(group);
+				for (Item item : group.items)
+				{
+					List<Group> groups = this.fuzzyGroupsByItem.get(item);
+					if (groups == null)
+						this.fuzzyGroupsByItem.put(item, groups = new ArrayList<>(1));
+					groups.add(group);
+				}
+			}
+		}
+
+		Threshold th = new Threshold(group, host, threshold, this.sequence++);
+		group.thresholds.add(th);
+		this.hosts.put(host, th);
+		host.onLevelChange(group.amount);
+	}
+
+	public void setThreshold(Host host, long threshold)
+	{
+		Threshold th = this.hosts.get(host);
+		if (th == null || th.value == threshold)
+			return;
+
+		th.group.thresholds.remove(th);
+		th = new Threshold(th.group, host, threshold, this.sequence++);
+		th.group.thresholds.add(th);
+		this.hosts.put(host, th);
+		host.onLevelChange(th.group.amount);
+	}
+
+	public void unregister(Host host)
+	{
+		Threshold th = this.hosts.remove(host);
+		if (th == null)
+			return;
+
+		Group group = th.group;
+		group.thresholds.remove(th);
+		if (!group.thresholds.isEmpty() || group == this.total)
+			return;
+
+		if (group.fuzzy == null)
+			this.preciseGroups.remove(group.filter);
+		else
+		{
+			this.fuzzyGroups.remove(group);
+			for (Item item : group.items)
+			{
+				List<Group> groups = this.fuzzyGroupsByItem.get(item);
+				if (groups != null && groups.remove(group) && groups.isEmpty())
+					this.fuzzyGroupsByItem.remove(item);
+			}
+		}
+	}
+
+	/**
+	 * Applies the changes of the item storage, must be called after the storage list of the monitor has been updated
+	 */
+	public void postChange(boolean add, Iterable<IAEItemStack> changes, IMEMonitor<IAEItemStack> monitor)
+	{
+		if (this.hosts.isEmpty())
+			return;
+
+		boolean watchTotal = !this.total.thresholds.isEmpty();
+		long totalAmount = this.total.amount;
+		for (IAEItemStack change : changes)
+		{
+			if (change == null)
+				continue;
+
+			long delta = add ? change.getStackSize() : -change.getStackSize();
+			if (delta != 0)
+			{
+				if (watchTotal)
+					totalAmount += delta;
+
+				Group group = this.preciseGroups.get(change);
+				if (group != null)
+				{
+					long amount = group.amount + delta;
+					if (amount < 0)
+						this.dirty = true;
+					else
+						this.update(group, amount);
+				}
+
+				// The fuzzy amounts are recomputed once after all changes
+				List<Group> groups = this.fuzzyGroupsByItem.get(change.getItem());
+				if (groups != null)
+				{
+					for (Group g : groups)
+					{
+						if (!g.dirty)
+						{
+							g.dirty = true;
+							this.dirtyGroups.add(g);
+						}
+					}
+				}
+			}
+		}
+
+		if (watchTotal)
+		{
+			if (totalAmount < 0)
+				this.dirty = true;
+			else
+				this.update(this.total, totalAmount);
+		}
+
+		if (!this.dirtyGroups.isEmpty())
+		{
+			Group[] groups = this.dirtyGroups.toArray(new Group[0]);
+			this.dirtyGroups.clear();
+			for (Group group : groups)
+			{
+				group.dirty = false;
+				this.update(group, this.computeAmount(group, monitor));
+			}
+		}
+	}
+
+	/**
+	 * Recomputes all amounts on the next {@link #onTick}, when the changes could not be applied (the storage list was
+	 * rebuilt or a change was not posted)
+	 */
+	public void markDirty()
+	{
+		this.dirty = true;
+	}
+
+	public void onTick(IMEMonitor<IAEItemStack> monitor)
+	{
+		if (!this.dirty)
+			return;
+
+		this.dirty = false;
+		this.update(this.total, this.computeAmount(this.total, monitor));
+		for (Group group : this.preciseGroups.values().toArray(new Group[0]))
+		{
+			this.update(group, this.computeAmount(group, monitor));
+		}
+		for (Group group : this.fuzzyGroups.toArray(new Group[0]))
+		{
+			this.update(group, this.computeAmount(group, monitor));
+		}
+	}
+
+	private long computeAmount(Group group, IMEMonitor<IAEItemStack> monitor)
+	{
+		IItemList<IAEItemStack> storageList = monitor.getStorageList();
+		long amount = 0;
+
+		if (group.filter == null)
+		{
+			for (IAEItemStack st : storageList)
+			{
+				amount += st.getStackSize();
+			}
+		}
+		else if (group.fuzzy == null)
+		{
+			IAEItemStack st = storageList.findPrecise(group.filter);
+			if (st != null)
+				amount = st.getStackSize();
+		}
+		else
+		{
+			for (IAEItemStack st : storageList.findFuzzy(group.filter, group.fuzzy))
+			{
+				amount += st.getStackSize();
+			}
+		}
+
+		return amount;
+	}
+
+	private void update(Group group, long amount)
+	{
+		long oldAmount = group.amount;
+		if (oldAmount == amount)
+			return;
+
+		group.amount = amount;
+
+		// The state of a host depends on amount >= threshold
+		NavigableSet<Threshold> crossed = group.thresholds.subSet(new Threshold(group, null, Math.min(oldAmount, amount) + 1, Integer.MIN_VALUE), true, new Threshold(group, null, Math.max(oldAmount, amount), Integer.MAX_VALUE), true);
+		if (crossed.isEmpty())
+			return;
+
+		// The hosts may update their neighbors and modify the index
+		for (Threshold th : crossed.toArray(new Threshold[0]))
+		{
+			if (this.hosts.get(th.host) == th)
+				th.host.onLevelChange(th.group.amount);
+		}
+	}
+
+	private static final class Group
+	{
+		private final IAEItemStack filter;
+		private final FuzzyMode fuzzy;
+		private final Set<Item> items;
+		private final NavigableSet<Threshold> thresholds = new TreeSet<>();
+		private long amount;
+		private boolean dirty;
+
+		private Group(IAEItemStack filter, FuzzyMode fuzzy)
+		{
+			this.filter = filter;
+			this.fuzzy = fuzzy;
+
+			if (fuzzy == null)
+				this.items = Collections.emptySet();
+			else if (filter instanceof AEItemStack && ((AEItemStack) filter).isOre())
+			{
+				// Candidates of the ore dictionary equivalents searched by ItemList.findFuzzy
+				this.items = Collections.newSetFromMap(new IdentityHashMap<>());
+				this.items.add(filter.getItem());
+				for (int oreId : OreDictionary.getOreIDs(filter.getItemStack()))
+				{
+					for (ItemStack is : OreDictionary.getOres(OreDictionary.getOreName(oreId)))
+					{
+						this.items.add(is.getItem());
+					}
+				}
+			}
+			else
+				this.items = Collections.singleton(filter.getItem());
+		}
+	}
+
+	private static final class Threshold implements Comparable<Threshold>
+	{
+		private final Group group;
+		private final Host host;
+		private final long value;
+		private final int sequence;
+
+		private Threshold(Group group, Host host, long value, int sequence)
+		{
+			this.group = group;
+			this.host = host;
+			this.value = value;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Threshold o)
+		{
+			int cmp = Long.compare(this.value, o.value);
+			return cmp != 0 ? cmp : Integer.compare(this.sequence, o.sequence);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.gamerforea.ae;
+
+import appeng.api.networking.IGridHost;
+import appeng.api.networking.IGridNode;
+import appeng.me.Grid;
+import appeng.parts.automation.PartAnnihilationPlane;
+import appeng.parts.automation.PartFormationPlane;
+import appeng.parts.automation.PartLevelEmitter;
+import appeng.parts.automation.PartSharedItemBus;
+import appeng.parts.misc.PartInterface;
+import appeng.parts.misc.PartStorageBus;
+import appeng.parts.misc.PartToggleBus;
+import appeng.parts.networking.PartQuartzFiber;
+import appeng.parts.p2p.PartP2PTunnel;
+import appeng.tile.crafting.TileMolecularAssembler;
+import appeng.tile.misc.TileInterface;
+import appeng.tile.misc.TileVibrationChamber;
+import appeng.tile.qnb.TileQuantumBridge;
+import appeng.tile.spatial.TileSpatialIOPort;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Updates grids of different worlds in parallel. Grids of one world are always updated sequentially on one thread.
+ * The grids that may be linked with other grids are found before the update by their machines (both ends of a link
+ * hold a storage bus, an interface, a P2P tunnel, a quartz fiber, a toggle bus or a Quantum Network Bridge) and are
+ * updated sequentially on the main thread after all worker threads have finished.
+ * <p>
+ * The worker threads are not server threads for {@link cpw.mods.fml.common.FMLCommonHandler#getEffectiveSide()}, so
+ * grids whose update may call the code of other mods or change the world outside of their own tiles are updated on
+ * the main thread as well: the grids with any machine of {@link #MAIN_THREAD_MACHINES} or of another mod.
+ * {@link appeng.util.Platform#isServer()} treats the worker threads as server threads.
+ * <p>
+ * This excludes almost every grid that moves items (any bus, interface or assembler), so only the grids made of
+ * drives, chests, terminals, crafting CPUs and other AE2 blocks without world access run on the worker threads.
+ * The option pays off on servers with many such grids in several worlds, otherwise it only adds the partitioning.
+ */
+public final class ParallelGridUpdater
+{
+	/**
+	 * Machines whose update must run on the main thread:
+	 * buses, interfaces and molecular assemblers (inventories of adjacent tiles),
+	 * formation and annihilation planes, spatial IO ports (blocks and entities of the world),
+	 * level emitters and toggle buses (neighbor notifications), vibration chambers (fuel handlers of other mods),
+	 * P2P tunnels, quartz fibers and Quantum Network Bridges (other grids and worlds).
+	 * Includes all machines that link grids, so linked grids are never updated on the worker threads.
+	 */
+	private static final Class<?>[] MAIN_THREAD_MACHINES = { PartSharedItemBus.class, PartStorageBus.class, PartInterface.class, TileInterface.class, TileMolecularAssembler.class, PartFormationPlane.class, PartAnnihilationPlane.class, TileSpatialIOPort.class, PartLevelEmitter.class, PartToggleBus.class, TileVibrationChamber.class, PartP2PTunnel.class, PartQuartzFiber.class, TileQuantumBridge.class };
+	private static final Map<Class<?>, Boolean> MAIN_THREAD_MACHINE_CACHE = new ConcurrentHashMap<>();
+
+	private static ForkJoinPool pool;
+
+	public static boolean isWorkerThread()
+	{
+		return Thread.currentThread() instanceof WorkerThread;
+	}
+
+	public static void update(Collection<Grid> grids, Consumer<Grid> updater)
+	{
+		Map<World, List<Grid>> partitions = new IdentityHashMap<>();
+		List<Grid> mainThreadGrids = new ArrayList<>();
+		for (Grid grid : grids)
+		{
+			World world = getWorld(grid);
+			if (world == null || hasMainThreadMachines(grid))
+				mainThreadGrids.add(grid);
+			else
+				partitions.computeIfAbsent(world, k -> new ArrayList<>()).add(grid);
+		}
+
+		if (partitions.size() > 1)
+		{
+			List<Callable<Void>> tasks = new ArrayList<>(partitions.size());
+			for (List<Grid> partition : partitions.values())
+			{
+				tasks.add(() -> {
+					partition.forEach(updater);
+					return null;
+				});
+			}
+
+			RuntimeException exception = null;
+			try
+			{
+				for (Future<Void> future : getPool().invokeAll(tasks))
+				{
+					try
+					{
+						future.get();
+					}
+					catch (ExecutionException e)
+					{
+						if (exception == null)
+							exception = new RuntimeException("Grid update failed", e.getCause());
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			if (exception != null)
+				throw exception;
+		}
+		else
+			for (List<Grid> partition : partitions.values())
+			{
+				partition.forEach(updater);
+			}
+
+		mainThreadGrids.forEach(updater);
+	}
+
+	private static World getWorld(Grid grid)
+	{
+		IGridNode pivot = grid.getPivot();
+		return pivot == null ? null : pivot.getWorld();
+	}
+
+	private static boolean hasMainThreadMachines(Grid grid)
+	{
+		for (Class<? extends IGridHost> machineClass : grid.getMachineClasses())
+		{
+			if (MAIN_THREAD_MACHINE_CACHE.computeIfAbsent(machineClass, ParallelGridUpdater::isMainThreadMachine))
+				if (!grid.getMachinesFast(machineClass).isEmpty())
+					return true;
+		}
+		return false;
+	}
+
+	private static boolean isMainThreadMachine(Class<?> machineClass)
+	{
+		if (!machineClass.getName().startsWith("appeng."))
+			return true;
+
+		for (Class<?> mainThreadClass : MAIN_THREAD_MACHINES)
+		{
+			if (mainThreadClass.isAssignableFrom(machineClass))
+				return true;
+		}
+		return false;
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+		{
+			int threads = EventConfig.parallelGridTickingThreads;
+			if (threads <= 0)
+				threads = Runtime.getRuntime().availableProcessors();
+
+			pool = new ForkJoinPool(threads, WorkerThread::new, null, false);
+		}
+		return pool;
+	}
+
+	private static final class WorkerThread extends ForkJoinWorkerThread
+	{
+		private WorkerThread(ForkJoinPool pool)
+		{
+			super(pool);
+			this.setName("AE2 Grid Update Worker #" + this.getPoolIndex());
+			this.setDaemon(true);
+		}
+	}
+}
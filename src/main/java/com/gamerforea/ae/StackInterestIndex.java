@@ -0,0 +1,198 @@
+package com.gamerforea.ae;
+
+import appeng.api.storage.data.IAEItemStack;
+import appeng.api.storage.data.IAEStack;
+
+import java.util.Arrays;
+
+/**
+ * Stack watchers by stack: open-addressing table with one hash computation and no allocation per lookup.
+ * Item stacks are compared by item, damage value and shared NBT identity (the same as
+ * {@link appeng.util.item.AEItemStack#equals}), other stacks with {@link Object#equals}.
+ * The watcher arrays are copy-on-write, so they may be iterated while watchers are added or removed.
+ */
+public final class StackInterestIndex<W>
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private Entry[] table = new Entry[MIN_CAPACITY];
+	private int size;
+
+	/**
+	 * @return watchers of the stack or null if there are none (must not be modified)
+	 */
+	public Object[] get(IAEStack<?> stack)
+	{
+		if (stack == null || this.size == 0)
+			return null;
+
+		Entry[] table = this.table;
+		int mask = table.length - 1;
+		int hash = stack.hashCode();
+		for (int i = index(hash, mask); ; i = i + 1 & mask)
+		{
+			Entry entry = table[i];
+			if (entry == null)
+				return null;
+			if (entry.hash == hash && entry.matches(stack))
+				return entry.watchers;
+		}
+	}
+
+	public void add(IAEStack<?> stack, W watcher)
+	{
+		Entry[] table = this.table;
+		int mask = table.length - 1;
+		int hash = stack.hashCode();
+		int i = index(hash, mask);
+		for (Entry entry; (entry = table[i]) != null; i = i + 1 & mask)
+		{
+			if (entry.hash == hash && entry.matches(stack))
+			{
+				for (Object w : entry.watchers)
+				{
+					if (w == watcher)
+						return;
+				}
+				Object[] watchers = Arrays.copyOf(entry.watchers, entry.watchers.length + 1);
+				watchers[entry.watchers.length] = watcher;
+				entry.watchers = watchers;
+				return;
+			}
+		}
+
+		table[i] = new Entry(stack.copy(), hash, new Object[] { watcher });
+		if (++this.size * 2 > table.length)
+			this.resize(table.length * 2);
+	}
+
+	public void remove(IAEStack<?> stack, W watcher)
+	{
+		Entry[] table = this.table;
+		int mask = table.length - 1;
+		int hash = stack.hashCode();
+		for (int i = index(hash, mask); table[i] != null; i = i + 1 & mask)
+		{
+			Entry entry = table[i];
+			if (entry.hash == hash && entry.matches(stack))
+			{
+				Object[] watchers = entry.watchers;
+				for (int j = 0; j < watchers.length; j++)
+				{
+					if (watchers[j] == watcher)
+					{
+						if (watchers.length == 1)
+							this.removeAt(i);
+						else
+						{
+							Object[] newWatchers = new Object[watchers.length - 1];
+							System.arraycopy(watchers, 0, newWatchers, 0, j);
+							System.arraycopy(watchers, j + 1, newWatchers, j, newWatchers.length - j);
+							entry.watchers = newWatchers;
+						}
+						return;
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	public void clear()
+	{
+		this.table = new Entry[MIN_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Backward shift deletion, keeps the probe sequences intact without tombstones
+	 */
+	private void removeAt(int i)
+	{
+		Entry[] table = this.table;
+		int mask = table.length - 1;
+		table[i] = null;
+		this.size--;
+
+		for (int j = i + 1 & mask; table[j] != null; j = j + 1 & mask)
+		{
+			int home = index(table[j].hash, mask);
+			if ((j - home & mask) >= (j - i & mask))
+			{
+				table[i] = table[j];
+				table[j] = null;
+				i = j;
+			}
+		}
+
+		if (this.size * 8 < table.length && table.length > MIN_CAPACITY)
+			this.resize(table.length / 2);
+	}
+
+	private void resize(int capacity)
+	{
+		Entry[] table = new Entry[capacity];
+		int mask = capacity - 1;
+		for (Entry entry : this.table)
+		{
+			if (entry != null)
+			{
+				int i = index(entry.hash, mask);
+				while (table[i] != null)
+				{
+					i = i + 1 & mask;
+				}
+				table[i] = entry;
+			}
+		}
+		this.table = table;
+	}
+
+	private static int index(int hash, int mask)
+	{
+		int h = hash * 0x9E3779B9;
+		return (h ^ h >>> 16) & mask;
+	}
+
+	private static final class Entry
+	{
+		private final IAEStack<?> stack;
+		private final Object item;
+		private final int damage;
+		private final Object tag;
+		private final int hash;
+		private Object[] watchers;
+
+		private Entry(IAEStack<?> stack, int hash, Object[] watchers)
+		{
+			this.stack = stack;
+			if (stack instanceof IAEItemStack)
+			{
+				IAEItemStack itemStack = (IAEItemStack) stack;
+				this.item = itemStack.getItem();
+				this.damage = itemStack.getItemDamage();
+				this.tag = itemStack.getTagCompound();
+			}
+			else
+			{
+				this.item = null;
+				this.damage = 0;
+				this.tag = null;
+			}
+			this.hash = hash;
+			this.watchers = watchers;
+		}
+
+		private boolean matches(IAEStack<?> stack)
+		{
+			if (this.item != null)
+			{
+				if (!(stack instanceof IAEItemStack))
+					return false;
+				IAEItemStack itemStack = (IAEItemStack) stack;
+				return itemStack.getItem() == this.item && itemStack.getItemDamage() == this.damage && itemStack.getTagCompound() == this.tag;
+			}
+			return this.stack.equals(stack);
+		}
+	}
+}
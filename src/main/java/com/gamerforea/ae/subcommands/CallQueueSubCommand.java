@@ -0,0 +1,40 @@
+package com.gamerforea.ae.subcommands;
+
+import appeng.hooks.TickHandler;
+import appeng.server.ISubCommand;
+import com.gamerforea.ae.util.CallableQueue;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.World;
+
+import java.util.Map;
+
+import static com.gamerforea.ae.util.ChatUtils.*;
+import static net.minecraft.util.EnumChatFormatting.AQUA;
+
+public final class CallQueueSubCommand implements ISubCommand
+{
+	@Override
+	public String getHelp(MinecraftServer srv)
+	{
+		return "Статистика очередей отложенных задач МЭ-сетей";
+	}
+
+	@Override
+	public void call(MinecraftServer srv, String[] args, ICommandSender sender)
+	{
+		TickHandler tickHandler = TickHandler.INSTANCE;
+		sendQueueInfo(sender, "Сервер", tickHandler.getServerQueue());
+		for (Map.Entry<World, CallableQueue> entry : tickHandler.getCallQueues().entrySet())
+		{
+			World world = entry.getKey();
+			sendQueueInfo(sender, "Мир " + world.provider.dimensionId, entry.getValue());
+		}
+	}
+
+	private static void sendQueueInfo(ICommandSender sender, String name, CallableQueue queue)
+	{
+		String info = "добавлено " + queue.getEnqueued() + ", выполнено " + queue.getExecuted() + ", отложено " + queue.getDeferred() + ", с ошибкой " + queue.getFailed() + ", в очереди " + queue.getSize();
+		sender.addChatMessage(text(name + ": ").appendSibling(color(text(info), AQUA)));
+	}
+}
@@ -1,5 +1,6 @@
 package com.gamerforea.ae.subcommands;
 
+import appeng.api.networking.IGridCache;
 import appeng.api.networking.IGridNode;
 import appeng.api.util.DimensionalCoord;
 import appeng.hooks.TickHandler;
@@ -7,6 +8,7 @@ import appeng.me.Grid;
 import appeng.server.ISubCommand;
 import appeng.tile.networking.TileController;
 import com.gamerforea.ae.EventConfig;
+import com.gamerforea.ae.util.LongHistogram;
 import com.google.common.collect.Lists;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.server.MinecraftServer;
@@ -14,6 +16,8 @@ import net.minecraft.server.MinecraftServer;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import static com.gamerforea.ae.util.ChatUtils.*;
@@ -27,7 +31,7 @@ public final class GridPerfSubCommand implements ISubCommand
 	@Override
 	public String getHelp(MinecraftServer srv)
 	{
-		return "Список нагруженных МЭ-сетей";
+		return "Список нагруженных МЭ-сетей (gridperf [p50|p99|max|avg] [номер] - время обработки каждого кэша сети)";
 	}
 
 	@Override
@@ -39,13 +43,94 @@ public final class GridPerfSubCommand implements ISubCommand
 			return;
 		}
 
+		int argIndex = 1;
+		Metric metric = Metric.P99;
+		if (args.length > argIndex)
+		{
+			Metric parsedMetric = Metric.byName(args[argIndex]);
+			if (parsedMetric != null)
+			{
+				metric = parsedMetric;
+				argIndex++;
+			}
+		}
+
 		Collection<Grid> grids = toCollection(TickHandler.INSTANCE.getGridList());
-		List<Grid> topGrids = grids.stream().sorted(Comparator.comparingLong(Grid::getAverageUpdateTime).reversed()).limit(MAX_LIST_SIZE).collect(Collectors.toList());
+		Comparator<Grid> comparator = Comparator.comparingLong(metric::get);
+		List<Grid> topGrids = grids.stream().sorted(comparator.reversed()).limit(MAX_LIST_SIZE).collect(Collectors.toList());
+
+		if (args.length > argIndex)
+		{
+			int rank;
+			try
+			{
+				rank = Integer.parseInt(args[argIndex]);
+			}
+			catch (NumberFormatException e)
+			{
+				rank = 0;
+			}
+
+			if (rank < 1 || rank > topGrids.size())
+			{
+				sender.addChatMessage(color(text("Некорректный номер МЭ-сети (1-" + topGrids.size() + ")"), RED));
+				return;
+			}
+
+			Grid topGrid = topGrids.get(rank - 1);
+			sendGridInfo(sender, rank, topGrid, metric);
+			for (Map.Entry<Class<? extends IGridCache>, LongHistogram> entry : topGrid.getCacheUpdateTimes().entrySet())
+			{
+				sender.addChatMessage(text("  " + entry.getKey().getSimpleName() + ": ").appendSibling(color(text(metric.get(entry.getValue()) + " ns"), AQUA)));
+			}
+			return;
+		}
+
 		for (int i = 0; i < topGrids.size(); i++)
 		{
-			Grid topGrid = topGrids.get(i);
-			long averageUpdateTime = topGrid.getAverageUpdateTime();
-			sender.addChatMessage(text((i + 1) + ". ").appendSibling(color(text(averageUpdateTime + " ns"), AQUA)).appendText(" [").appendSibling(dimCoordToChatComponent(getGridCoords(topGrid), sender)).appendText("]"));
+			sendGridInfo(sender, i + 1, topGrids.get(i), metric);
+		}
+	}
+
+	private static void sendGridInfo(ICommandSender sender, int rank, Grid grid, Metric metric)
+	{
+		long updateTime = metric.get(grid);
+		sender.addChatMessage(text(rank + ". ").appendSibling(color(text(updateTime + " ns (" + metric.name().toLowerCase() + ")"), AQUA)).appendText(" [").appendSibling(dimCoordToChatComponent(getGridCoords(grid), sender)).appendText("]"));
+	}
+
+	private enum Metric
+	{
+		P50(histogram -> histogram.getPercentile(50)),
+		P99(histogram -> histogram.getPercentile(99)),
+		MAX(LongHistogram::getMax),
+		AVG(LongHistogram::getAverage);
+
+		private final ToLongFunction<LongHistogram> getter;
+
+		Metric(ToLongFunction<LongHistogram> getter)
+		{
+			this.getter = getter;
+		}
+
+		long get(LongHistogram histogram)
+		{
+			return this.getter.applyAsLong(histogram);
+		}
+
+		final long get(Grid grid)
+		{
+			LongHistogram updateTimes = grid.getUpdateTimes();
+			return updateTimes == null ? 0 : this.get(updateTimes);
+		}
+
+		static Metric byName(String name)
+		{
+			for (Metric metric : values())
+			{
+				if (metric.name().equalsIgnoreCase(name))
+					return metric;
+			}
+			return null;
 		}
 	}
 
@@ -0,0 +1,84 @@
+package com.gamerforea.ae.util;
+
+import appeng.core.AELog;
+import appeng.util.IWorldCallable;
+import net.minecraft.world.World;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of world callables: any thread may add, only the thread ticking the world processes.
+ */
+public final class CallableQueue
+{
+	private final Queue<IWorldCallable<?>> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong enqueued = new AtomicLong();
+	private volatile long executed;
+	private volatile long deferred;
+	private volatile long failed;
+
+	public void add(IWorldCallable<?> callable)
+	{
+		this.queue.add(callable);
+		this.size.incrementAndGet();
+		this.enqueued.incrementAndGet();
+	}
+
+	/**
+	 * @param budget time limit in nanoseconds, the callables left after it are deferred to the next call
+	 */
+	public void process(World world, long budget)
+	{
+		final long deadline = System.nanoTime() + budget;
+		IWorldCallable<?> callable;
+		while ((callable = this.queue.poll()) != null)
+		{
+			this.size.decrementAndGet();
+			try
+			{
+				callable.call(world);
+				this.executed++;
+			}
+			catch (final Exception e)
+			{
+				this.failed++;
+				AELog.debug(e);
+			}
+
+			if (System.nanoTime() >= deadline)
+			{
+				this.deferred += this.size.get();
+				break;
+			}
+		}
+	}
+
+	public int getSize()
+	{
+		return this.size.get();
+	}
+
+	public long getEnqueued()
+	{
+		return this.enqueued.get();
+	}
+
+	public long getExecuted()
+	{
+		return this.executed;
+	}
+
+	public long getDeferred()
+	{
+		return this.deferred;
+	}
+
+	public long getFailed()
+	{
+		return this.failed;
+	}
+}
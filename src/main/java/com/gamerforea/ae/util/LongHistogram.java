@@ -0,0 +1,147 @@
+package com.gamerforea.ae.util;
+
+import java.util.Arrays;
+
+/**
+ * Log-bucketed histogram of non-negative values with a sliding window of the last {@code windowSize} samples.
+ * Every power of two is split into {@link #SUB_BUCKET_COUNT} buckets (relative error up to 12.5%).
+ * The window is made of several segments, the oldest one is cleared when the newest one is full.
+ * Memory is fixed after construction and {@link #push(long)} does not allocate.
+ */
+public final class LongHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+	private static final int MAX_EXPONENT = 39;
+	private static final long MAX_VALUE = (1L << MAX_EXPONENT + 1) - 1;
+	private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+	private static final int SEGMENT_COUNT = 4;
+
+	private final int[][] counts = new int[SEGMENT_COUNT][BUCKET_COUNT];
+	private final int[] sizes = new int[SEGMENT_COUNT];
+	private final long[] sums = new long[SEGMENT_COUNT];
+	private final long[] maxValues = new long[SEGMENT_COUNT];
+	private final int segmentSize;
+	private int segment;
+
+	public LongHistogram(int windowSize)
+	{
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("windowSize must be positive");
+		this.segmentSize = Math.max(1, (windowSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+	}
+
+	public void push(long value)
+	{
+		value = Math.min(Math.max(value, 0), MAX_VALUE);
+
+		int segment = this.segment;
+		if (this.sizes[segment] >= this.segmentSize)
+		{
+			segment = this.segment = segment + 1 == SEGMENT_COUNT ? 0 : segment + 1;
+			Arrays.fill(this.counts[segment], 0);
+			this.sizes[segment] = 0;
+			this.sums[segment] = 0;
+			this.maxValues[segment] = 0;
+		}
+
+		this.counts[segment][bucketIndex(value)]++;
+		this.sizes[segment]++;
+		this.sums[segment] += value;
+		if (value > this.maxValues[segment])
+			this.maxValues[segment] = value;
+	}
+
+	public int getSize()
+	{
+		int size = 0;
+		for (int segmentSize : this.sizes)
+		{
+			size += segmentSize;
+		}
+		return size;
+	}
+
+	public long getAverage()
+	{
+		int size = this.getSize();
+		if (size == 0)
+			return 0;
+
+		long sum = 0;
+		for (long segmentSum : this.sums)
+		{
+			sum += segmentSum;
+		}
+		return sum / size;
+	}
+
+	public long getMax()
+	{
+		long max = 0;
+		for (long segmentMax : this.maxValues)
+		{
+			if (segmentMax > max)
+				max = segmentMax;
+		}
+		return max;
+	}
+
+	/**
+	 * @param percentile value in range [0; 100]
+	 * @return upper bound of the bucket containing the percentile (never greater than {@link #getMax()})
+	 */
+	public long getPercentile(double percentile)
+	{
+		int size = this.getSize();
+		if (size == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(size * Math.min(Math.max(percentile, 0), 100) / 100));
+		long max = this.getMax();
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+		{
+			for (int[] segmentCounts : this.counts)
+			{
+				count += segmentCounts[bucket];
+			}
+
+			if (count >= rank)
+				return Math.min(bucketUpperBound(bucket), max);
+		}
+		return max;
+	}
+
+	public void clear()
+	{
+		for (int[] segmentCounts : this.counts)
+		{
+			Arrays.fill(segmentCounts, 0);
+		}
+		Arrays.fill(this.sizes, 0);
+		Arrays.fill(this.sums, 0);
+		Arrays.fill(this.maxValues, 0);
+		this.segment = 0;
+	}
+
+	private static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1 << SUB_BUCKET_BITS) + (int) (value >>> shift & SUB_BUCKET_MASK);
+	}
+
+	private static long bucketUpperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKET_COUNT)
+			return bucket;
+
+		int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+		long mantissa = SUB_BUCKET_COUNT + (bucket & SUB_BUCKET_MASK);
+		return (mantissa + 1 << shift) - 1;
+	}
+}
@@ -0,0 +1,86 @@
+package com.gamerforea.ae.util;
+
+/**
+ * Per-thread recursion guard: identity stack and the objects visited during the current iteration pass.
+ * Both are plain arrays scanned by identity: they only hold the networks nested into each other through storage
+ * buses (usually a handful), which is cheaper than hashing. Does not allocate once the arrays have grown to the used
+ * depth, and starting a new pass only clears the used slots.
+ */
+public final class ReentrancyStack
+{
+	private Object[] stack = new Object[8];
+	private int size;
+	private Object[] visited = new Object[8];
+	private int visitedSize;
+
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	public boolean contains(Object o)
+	{
+		return indexOf(this.stack, this.size, o) >= 0;
+	}
+
+	public void push(Object o)
+	{
+		if (this.size == this.stack.length)
+			this.stack = grow(this.stack);
+		this.stack[this.size++] = o;
+	}
+
+	/**
+	 * @return removed top element or null if the stack is empty
+	 */
+	public Object pop()
+	{
+		if (this.size == 0)
+			return null;
+
+		Object o = this.stack[--this.size];
+		this.stack[this.size] = null;
+		return o;
+	}
+
+	/**
+	 * Starts a new iteration pass if the stack is empty
+	 *
+	 * @return true if the object was not visited during the current pass yet
+	 */
+	public boolean visit(Object o)
+	{
+		if (this.size == 0)
+		{
+			for (int i = 0; i < this.visitedSize; i++)
+			{
+				this.visited[i] = null;
+			}
+			this.visitedSize = 0;
+		}
+		else if (indexOf(this.visited, this.visitedSize, o) >= 0)
+			return false;
+
+		if (this.visitedSize == this.visited.length)
+			this.visited = grow(this.visited);
+		this.visited[this.visitedSize++] = o;
+		return true;
+	}
+
+	private static int indexOf(Object[] array, int size, Object o)
+	{
+		for (int i = size - 1; i >= 0; i--)
+		{
+			if (array[i] == o)
+				return i;
+		}
+		return -1;
+	}
+
+	private static Object[] grow(Object[] array)
+	{
+		Object[] newArray = new Object[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+}